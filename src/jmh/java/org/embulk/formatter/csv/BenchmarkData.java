@@ -0,0 +1,224 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.Column;
+import org.embulk.spi.Exec;
+import org.embulk.spi.FileOutput;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.Schema;
+import org.embulk.spi.json.JsonArray;
+import org.embulk.spi.json.JsonBoolean;
+import org.embulk.spi.json.JsonLong;
+import org.embulk.spi.json.JsonObject;
+import org.embulk.spi.json.JsonString;
+import org.embulk.spi.type.Type;
+import org.embulk.spi.type.Types;
+import org.embulk.test.EmbulkTestRuntime;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * Generates input data for benchmarks, deterministically by a fixed seed.
+ */
+final class BenchmarkData {
+    private BenchmarkData() {
+        // No instantiation.
+    }
+
+    /**
+     * Generates strings of a kind: {@code "clean"}, {@code "quote"} with quotes and delimiters, {@code "newline"} with
+     * line breaks, {@code "mixed"} of them in 90:5:5, or {@code "long"} of 1024 characters without special characters.
+     */
+    static String[] strings(final String kind, final int count) {
+        final Random random = new Random(SEED);
+        final String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            strings[i] = string(random, kind);
+        }
+        return strings;
+    }
+
+    /**
+     * Builds a schema of {@code width} columns of a type, or of all the types in turn if {@code type} is {@code "mixed"}.
+     */
+    static Schema schema(final String type, final int width) {
+        final Schema.Builder builder = Schema.builder();
+        for (int i = 0; i < width; i++) {
+            builder.add("c" + i, "mixed".equals(type) ? TYPES[i % TYPES.length] : toType(type));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds pages of {@code rows} records in total. It must be called in an Embulk session.
+     */
+    static List<Page> pages(final Schema schema, final int rows) {
+        final Random random = new Random(SEED);
+        final List<Page> pages = new ArrayList<>();
+        final PageOutput collecting = new PageOutput() {
+                @Override
+                public void add(final Page page) {
+                    pages.add(page);
+                }
+
+                @Override
+                public void finish() {
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        try (final PageBuilder builder = Exec.getPageBuilder(Exec.getBufferAllocator(), schema, collecting)) {
+            for (int row = 0; row < rows; row++) {
+                for (final Column column : schema.getColumns()) {
+                    setValue(builder, column, random, row);
+                }
+                builder.addRecord();
+            }
+            builder.finish();
+        }
+        return pages;
+    }
+
+    /**
+     * Runs {@code action} in the Embulk session of {@code runtime}.
+     */
+    static void runInSession(final EmbulkTestRuntime runtime, final Runnable action) {
+        final Statement statement = new Statement() {
+                @Override
+                public void evaluate() {
+                    action.run();
+                }
+            };
+        try {
+            runtime.apply(statement, Description.EMPTY).evaluate();
+        } catch (final RuntimeException | Error ex) {
+            throw ex;
+        } catch (final Throwable ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Counts bytes written into it, and discards them.
+     */
+    static final class CountingFileOutput implements FileOutput {
+        @Override
+        public void nextFile() {
+        }
+
+        @Override
+        public void add(final Buffer buffer) {
+            this.bytes += buffer.limit();
+            buffer.release();
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        long bytes;
+    }
+
+    private static void setValue(final PageBuilder builder, final Column column, final Random random, final int row) {
+        if (random.nextInt(20) == 0) {
+            builder.setNull(column);
+            return;
+        }
+        final Type type = column.getType();
+        if (type == Types.BOOLEAN) {
+            builder.setBoolean(column, random.nextBoolean());
+        } else if (type == Types.LONG) {
+            builder.setLong(column, random.nextLong() >> random.nextInt(63));
+        } else if (type == Types.DOUBLE) {
+            builder.setDouble(column, random.nextDouble() * Math.pow(10, random.nextInt(12) - 4));
+        } else if (type == Types.STRING) {
+            builder.setString(column, string(random, "mixed"));
+        } else if (type == Types.TIMESTAMP) {
+            // Ten records per second on average, which is typical for logs.
+            builder.setTimestamp(column, Instant.ofEpochSecond(1700000000L + row / 10, random.nextInt(1000000000)));
+        } else {
+            builder.setJson(column, JsonObject.ofEntries(
+                    JsonObject.entry("id", JsonLong.of(row)),
+                    JsonObject.entry("name", JsonString.of(string(random, "clean"))),
+                    JsonObject.entry("tags", JsonArray.of(JsonString.of("a"), JsonString.of("b,c"))),
+                    JsonObject.entry("active", random.nextBoolean() ? JsonBoolean.TRUE : JsonBoolean.FALSE)));
+        }
+    }
+
+    private static String string(final Random random, final String kind) {
+        final String actualKind;
+        if ("mixed".equals(kind)) {
+            final int dice = random.nextInt(20);
+            actualKind = dice == 0 ? "quote" : dice == 1 ? "newline" : "clean";
+        } else {
+            actualKind = kind;
+        }
+
+        final int length = "long".equals(actualKind) ? 1024 : 8 + random.nextInt(32);
+        final StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            final int dice = random.nextInt(10);
+            if ("quote".equals(actualKind) && dice == 0) {
+                builder.append(random.nextBoolean() ? '"' : ',');
+            } else if ("newline".equals(actualKind) && dice == 0) {
+                builder.append(random.nextBoolean() ? "\n" : "\r\n");
+            } else {
+                builder.append(ALPHANUMERICS.charAt(random.nextInt(ALPHANUMERICS.length())));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static Type toType(final String type) {
+        switch (type) {
+            case "boolean":
+                return Types.BOOLEAN;
+            case "long":
+                return Types.LONG;
+            case "double":
+                return Types.DOUBLE;
+            case "string":
+                return Types.STRING;
+            case "timestamp":
+                return Types.TIMESTAMP;
+            case "json":
+                return Types.JSON;
+            default:
+                throw new IllegalArgumentException("Unknown type: " + type);
+        }
+    }
+
+    private static final long SEED = 20260101L;
+
+    private static final String ALPHANUMERICS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 ";
+
+    private static final Type[] TYPES = { Types.BOOLEAN, Types.LONG, Types.DOUBLE, Types.STRING, Types.TIMESTAMP, Types.JSON };
+}
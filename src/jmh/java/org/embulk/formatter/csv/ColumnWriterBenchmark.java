@@ -0,0 +1,117 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.embulk.spi.Column;
+import org.embulk.spi.Exec;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.embulk.test.EmbulkTestRuntime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ColumnWriter}s of each column type, which read values from pages and write them into the line buffer.
+ *
+ * <p>An operation is a row of {@link #WIDTH} columns of the type. The output is counted in characters before encoding.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ColumnWriterBenchmark {
+    @Param({ "boolean", "long", "double", "string", "timestamp", "json" })
+    public String type;
+
+    // "default" for Double#toString, "plain" for plain_notation, or a number for decimal_places of double columns.
+    @Param({ "default" })
+    public String doubleFormat;
+
+    /**
+     * Generates pages, and compiles column writers with the default options of the plugin.
+     */
+    @Setup
+    public void setup() {
+        this.runtime = new EmbulkTestRuntime();
+        this.schema = BenchmarkData.schema(this.type, WIDTH);
+        BenchmarkData.runInSession(this.runtime, () -> this.pages = BenchmarkData.pages(this.schema, ROWS));
+
+        final FieldEscaper escaper = new FieldEscaper(',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', '"', "\n", "");
+        final TimestampColumnFormatter[] timestampFormatters = new TimestampColumnFormatter[WIDTH];
+        final DoubleFormatter[] doubleFormatters = new DoubleFormatter[WIDTH];
+        for (final Column column : this.schema.getColumns()) {
+            if (column.getType() == Types.TIMESTAMP) {
+                timestampFormatters[column.getIndex()] = TimestampColumnFormatter.of("%Y-%m-%d %H:%M:%S.%6N %z", "UTC", escaper);
+            } else if (column.getType() == Types.DOUBLE && !"default".equals(this.doubleFormat)) {
+                doubleFormatters[column.getIndex()] =
+                        "plain".equals(this.doubleFormat) ? DoubleFormatter.plain() : DoubleFormatter.fixed(Integer.parseInt(this.doubleFormat));
+            }
+        }
+        this.columnWriters = ColumnWriter.compile(
+                this.schema.getColumns(), ',', escaper, "", timestampFormatters, doubleFormatters, new StringValueCache[WIDTH]);
+        this.line = new StringBuilder();
+    }
+
+    /**
+     * Writes all the rows in the pages.
+     *
+     * <p>A reader is created per page, and not closed. A reader releases its page when it is closed, or a next page is set.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void write(final OutputCounters counters) {
+        BenchmarkData.runInSession(this.runtime, () -> {
+            for (final Page page : this.pages) {
+                final PageReader reader = Exec.getPageReader(this.schema);
+                reader.setPage(page);
+                while (reader.nextRecord()) {
+                    this.line.setLength(0);
+                    for (final ColumnWriter columnWriter : this.columnWriters) {
+                        columnWriter.write(reader, this.line);
+                    }
+                    counters.bytes += this.line.length() + 1;  // With the newline.
+                }
+            }
+        });
+    }
+
+    static final int WIDTH = 8;
+
+    private static final int ROWS = 10000;
+
+    private EmbulkTestRuntime runtime;
+    private Schema schema;
+    private List<Page> pages;
+    private ColumnWriter[] columnWriters;
+    private StringBuilder line;
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures escaping and quoting of string values by {@link FieldEscaper} under each quote policy.
+ *
+ * <p>An operation is a value.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FieldEscaperBenchmark {
+    @Param({ "MINIMAL", "ALL", "NONE" })
+    public String quotePolicy;
+
+    @Param({ "clean", "quote", "newline", "long" })
+    public String strings;
+
+    /**
+     * Prepares values, and the escaper with the default options of the plugin.
+     */
+    @Setup
+    public void setup() {
+        final CsvFormatterPlugin.QuotePolicy policy = CsvFormatterPlugin.QuotePolicy.valueOf(this.quotePolicy);
+        final char escape = policy == CsvFormatterPlugin.QuotePolicy.NONE ? '\\' : '"';
+        this.escaper = new FieldEscaper(',', policy, '"', escape, "\n", "");
+        this.values = BenchmarkData.strings(this.strings, VALUES);
+        this.line = new StringBuilder();
+    }
+
+    /**
+     * Appends all the values into the line buffer as fields.
+     */
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public StringBuilder appendTo(final OutputCounters counters) {
+        this.line.setLength(0);
+        for (final String value : this.values) {
+            this.escaper.appendTo(this.line, value);
+        }
+        counters.bytes += this.line.length();
+        return this.line;
+    }
+
+    private static final int VALUES = 1024;
+
+    private FieldEscaper escaper;
+    private String[] values;
+    private StringBuilder line;
+}
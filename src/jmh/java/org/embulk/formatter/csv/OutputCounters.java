@@ -0,0 +1,41 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reports the output size per second in addition to the primary score of a benchmark.
+ *
+ * <p>The primary score is in rows (or values) per second by {@code @OperationsPerInvocation}. {@code "bytes"} is the
+ * output in bytes (or characters before encoding) per second. Bytes allocated per row are {@code "gc.alloc.rate.norm"}
+ * reported by the GC profiler, which is enabled by the {@code jmh} task.
+ */
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+@State(Scope.Thread)
+public class OutputCounters {
+    @Setup(Level.Iteration)
+    public void reset() {
+        this.bytes = 0;
+    }
+
+    public long bytes;
+}
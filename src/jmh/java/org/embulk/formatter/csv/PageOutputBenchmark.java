@@ -0,0 +1,120 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.embulk.config.ConfigSource;
+import org.embulk.config.TaskSource;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.Schema;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a whole task of the plugin, {@code open()}, {@code add()} of all the pages, and {@code finish()}, over columns
+ * of all the types in turn.
+ *
+ * <p>An operation is a row. The pages are generated again before each invocation because the plugin releases them, so
+ * {@code "gc.alloc.rate.norm"} of this benchmark includes generating the pages. Compare it with {@link ColumnWriterBenchmark}
+ * for allocations by the formatter itself.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PageOutputBenchmark {
+    @Param({ "1", "8", "64" })
+    public int width;
+
+    @Param({ "UTF-8", "Shift_JIS" })
+    public String charset;
+
+    @Param({ "false", "true" })
+    public boolean columnar;
+
+    /**
+     * Prepares the task source of the plugin with the default options, except for the charset and columnar_formatting.
+     */
+    @Setup
+    public void setup() {
+        this.runtime = new EmbulkTestRuntime();
+        this.schema = BenchmarkData.schema("mixed", this.width);
+        BenchmarkData.runInSession(this.runtime, () -> {
+            final ConfigSource config = CONFIG_MAPPER_FACTORY.newConfigSource()
+                    .set("charset", this.charset)
+                    .set("columnar_formatting", this.columnar);
+            this.taskSource = CONFIG_MAPPER_FACTORY.createConfigMapper().map(config, CsvFormatterPlugin.PluginTask.class).toTaskSource();
+        });
+        this.plugin = new CsvFormatterPlugin();
+    }
+
+    /**
+     * Generates the pages to be consumed by the next invocation.
+     */
+    @Setup(Level.Invocation)
+    public void generatePages() {
+        BenchmarkData.runInSession(this.runtime, () -> this.pages = BenchmarkData.pages(this.schema, ROWS));
+    }
+
+    /**
+     * Runs a task of the plugin over the pages.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void run(final OutputCounters counters) {
+        final BenchmarkData.CountingFileOutput fileOutput = new BenchmarkData.CountingFileOutput();
+        BenchmarkData.runInSession(this.runtime, () -> {
+            final PageOutput pageOutput = this.plugin.open(this.taskSource, this.schema, fileOutput);
+            try {
+                for (final Page page : this.pages) {
+                    pageOutput.add(page);
+                }
+                pageOutput.finish();
+            } finally {
+                pageOutput.close();
+            }
+        });
+        counters.bytes += fileOutput.bytes;
+    }
+
+    private static final int ROWS = 10000;
+
+    private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY = ConfigMapperFactory.builder().addDefaultModules().build();
+
+    private EmbulkTestRuntime runtime;
+    private Schema schema;
+    private TaskSource taskSource;
+    private CsvFormatterPlugin plugin;
+    private List<Page> pages;
+}
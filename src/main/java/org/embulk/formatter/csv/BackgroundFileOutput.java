@@ -0,0 +1,174 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.FileOutput;
+
+/**
+ * Passes {@link Buffer}s to the underlying {@link FileOutput} on a dedicated writer thread.
+ *
+ * <p>Calls are handed over through a bounded queue, and executed in the same order on the writer thread. The formatting
+ * thread blocks when the queue is full. {@link #finish()} waits until the underlying {@link FileOutput#finish()} returns.
+ * An exception thrown on the writer thread is rethrown by the next call on the formatting thread. Buffers queued after
+ * the exception are released without being written.
+ *
+ * <p>The writer thread is started in the constructor so that it inherits the Embulk session of the task thread.
+ */
+final class BackgroundFileOutput implements FileOutput {
+    BackgroundFileOutput(final FileOutput output, final int queueSize) {
+        this.output = output;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.thread = new Thread(this::run, "embulk-formatter-csv-writer");
+        this.thread.setDaemon(true);
+        this.error = null;
+        this.closed = false;
+        this.thread.start();
+    }
+
+    @Override
+    public void nextFile() {
+        this.throwIfFailed();
+        this.put(new Operation(Operation.NEXT_FILE, null, null));
+    }
+
+    @Override
+    public void add(final Buffer buffer) {
+        if (this.error != null) {
+            buffer.release();
+            this.throwIfFailed();
+        }
+        this.put(new Operation(Operation.ADD, buffer, null));
+    }
+
+    @Override
+    public void finish() {
+        this.throwIfFailed();
+        final CountDownLatch done = new CountDownLatch(1);
+        this.put(new Operation(Operation.FINISH, null, done));
+        try {
+            done.await();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the CSV writer thread to finish.", ex);
+        }
+        this.throwIfFailed();
+    }
+
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.put(new Operation(Operation.STOP, null, null));
+            this.thread.join();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            this.thread.interrupt();
+        } finally {
+            this.output.close();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            final Operation operation;
+            try {
+                operation = this.queue.take();
+            } catch (final InterruptedException ex) {
+                return;
+            }
+            if (operation.type == Operation.STOP) {
+                return;
+            }
+            if (this.error != null) {
+                if (operation.buffer != null) {
+                    operation.buffer.release();
+                }
+            } else {
+                try {
+                    switch (operation.type) {
+                        case Operation.ADD:
+                            this.output.add(operation.buffer);
+                            break;
+                        case Operation.NEXT_FILE:
+                            this.output.nextFile();
+                            break;
+                        default:  // FINISH
+                            this.output.finish();
+                            break;
+                    }
+                } catch (final RuntimeException | Error ex) {
+                    this.error = ex;
+                }
+            }
+            if (operation.done != null) {
+                operation.done.countDown();
+            }
+        }
+    }
+
+    private void put(final Operation operation) {
+        try {
+            this.queue.put(operation);
+        } catch (final InterruptedException ex) {
+            if (operation.buffer != null) {
+                operation.buffer.release();
+            }
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while handing over to the CSV writer thread.", ex);
+        }
+    }
+
+    private void throwIfFailed() {
+        final Throwable error = this.error;
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        }
+    }
+
+    private static final class Operation {
+        Operation(final int type, final Buffer buffer, final CountDownLatch done) {
+            this.type = type;
+            this.buffer = buffer;
+            this.done = done;
+        }
+
+        static final int ADD = 0;
+        static final int NEXT_FILE = 1;
+        static final int FINISH = 2;
+        static final int STOP = 3;
+
+        final int type;
+        final Buffer buffer;
+        final CountDownLatch done;
+    }
+
+    private final FileOutput output;
+    private final BlockingQueue<Operation> queue;
+    private final Thread thread;
+
+    private volatile Throwable error;
+    private boolean closed;
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps each character in the BMP to its bytes in a charset, so that {@link DirectLineOutput} encodes a character by a
+ * lookup instead of a {@link CharsetEncoder} round trip.
+ *
+ * <p>It is available for stateless ASCII-compatible charsets which encode a character into 3 bytes at most, such as
+ * ISO-8859-1, windows-1252, Shift_JIS and EUC-JP. Unmappable characters are mapped to the replacement of the charset in
+ * the same way as {@code LineEncoder}. Surrogates are not in the table, and they are encoded by {@link #newEncoder()}.
+ *
+ * <p>Tables are immutable, and built once per charset in the process.
+ */
+final class CharsetTable {
+    private CharsetTable(final Charset charset, final int[] entries) {
+        this.charset = charset;
+        this.entries = entries;
+    }
+
+    /**
+     * Returns the table of {@code charset}, or empty if the charset is not available for a table.
+     */
+    static Optional<CharsetTable> of(final Charset charset) {
+        return CACHE.computeIfAbsent(charset, CharsetTable::build);
+    }
+
+    /**
+     * Returns the entry of {@code c}, which has the number of bytes in the highest byte, and the bytes in the lower 3
+     * bytes from the highest. It is {@code 0} if {@code c} is not in the table.
+     */
+    int get(final char c) {
+        return this.entries[c];
+    }
+
+    /**
+     * Creates an encoder which replaces malformed and unmappable characters like {@code LineEncoder}.
+     */
+    CharsetEncoder newEncoder() {
+        return newEncoder(this.charset);
+    }
+
+    private static Optional<CharsetTable> build(final Charset charset) {
+        if (!charset.canEncode()) {
+            return Optional.empty();
+        }
+        final CharsetEncoder encoder = newEncoder(charset);
+        if (encoder.maxBytesPerChar() > MAX_BYTES_PER_ENTRY) {
+            return Optional.empty();  // UTF-16, UTF-32, ISO-2022-JP with escape sequences, GB18030, etc.
+        }
+
+        final int[] entries = new int[Character.MAX_VALUE + 1];
+        final char[] single = new char[1];
+        for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+            if (Character.isSurrogate((char) c)) {
+                continue;
+            }
+            single[0] = (char) c;
+            final ByteBuffer encoded;
+            try {
+                encoded = encoder.encode(CharBuffer.wrap(single));
+            } catch (final CharacterCodingException ex) {
+                throw new IllegalStateException("Unexpected error with replacing actions.", ex);
+            }
+            final int length = encoded.remaining();
+            if (c < 0x80 && (length != 1 || encoded.get(0) != c)) {
+                return Optional.empty();  // Not ASCII-compatible.
+            }
+            if (length == 0 || length > MAX_BYTES_PER_ENTRY) {
+                continue;  // Left to the encoder.
+            }
+            int entry = length << 24;
+            for (int i = 0; i < length; i++) {
+                entry |= (encoded.get(i) & 0xff) << (16 - i * 8);
+            }
+            entries[c] = entry;
+        }
+        return Optional.of(new CharsetTable(charset, entries));
+    }
+
+    private static CharsetEncoder newEncoder(final Charset charset) {
+        return charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    static final int MAX_BYTES_PER_ENTRY = 3;
+
+    private static final ConcurrentHashMap<Charset, Optional<CharsetTable>> CACHE = new ConcurrentHashMap<>();
+
+    private final Charset charset;
+    private final int[] entries;
+}
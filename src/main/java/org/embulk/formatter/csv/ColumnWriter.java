@@ -0,0 +1,311 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.time.Instant;
+import java.util.List;
+import org.embulk.spi.Column;
+import org.embulk.spi.ColumnVisitor;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+
+/**
+ * Writes one column of a record into the line buffer.
+ *
+ * <p>The columns to be written, which are the {@code columns} option or all the columns of the {@link Schema}, are compiled
+ * into an array of {@link ColumnWriter}s in their output order once per task by {@link #compile}. Each writer knows its
+ * delimiter prefix, the null string, and its formatter in advance so that the per-record loop is a plain walk over the
+ * array without any allocation nor type dispatch through {@link ColumnVisitor}. Columns not to be written are never read.
+ */
+abstract class ColumnWriter {
+    ColumnWriter(final Column column, final String prefix, final String nullString, final FieldEscaper escaper) {
+        this.column = column;
+        this.prefix = prefix;
+        this.nullString = nullString;
+        this.escaper = escaper;
+    }
+
+    static ColumnWriter[] compile(
+            final List<Column> columns,
+            final char delimiter,
+            final FieldEscaper escaper,
+            final String nullString,
+            final TimestampColumnFormatter[] timestampFormatters,
+            final DoubleFormatter[] doubleFormatters,
+            final StringValueCache[] stringValueCaches) {
+        final ColumnWriter[] writers = new ColumnWriter[columns.size()];
+        final String delimiterString = String.valueOf(delimiter);
+        for (int i = 0; i < columns.size(); i++) {
+            final Column column = columns.get(i);
+            final int position = i;
+            final int index = column.getIndex();  // Formatters and caches are by the index in the schema.
+            final String prefix = position != 0 ? delimiterString : "";
+            column.visit(new ColumnVisitor() {
+                    public void booleanColumn(final Column column) {
+                        writers[position] = new BooleanColumnWriter(column, prefix, nullString, escaper);
+                    }
+
+                    public void longColumn(final Column column) {
+                        writers[position] = new LongColumnWriter(column, prefix, nullString, escaper);
+                    }
+
+                    public void doubleColumn(final Column column) {
+                        writers[position] = new DoubleColumnWriter(column, prefix, nullString, escaper, doubleFormatters[index]);
+                    }
+
+                    public void stringColumn(final Column column) {
+                        writers[position] = new StringColumnWriter(column, prefix, nullString, escaper, stringValueCaches[index]);
+                    }
+
+                    public void timestampColumn(final Column column) {
+                        writers[position] = new TimestampColumnWriter(column, prefix, nullString, escaper, timestampFormatters[index]);
+                    }
+
+                    public void jsonColumn(final Column column) {
+                        writers[position] = new JsonColumnWriter(column, prefix, nullString, escaper);
+                    }
+                });
+        }
+        return writers;
+    }
+
+    final void write(final PageReader reader, final StringBuilder line) {
+        line.append(this.prefix);
+        if (reader.isNull(this.column)) {
+            line.append(this.nullString);
+        } else {
+            this.writeValue(reader, line);
+        }
+    }
+
+    /**
+     * Writes in the same way as {@link #write}, and returns the number of characters of the field without the delimiter,
+     * for {@link FormatterMetrics}.
+     *
+     * <p>The field is the last characters of {@code line} then. It is not for large values streamed to the output.
+     */
+    final int writeCounted(final PageReader reader, final StringBuilder line) {
+        line.append(this.prefix);
+        final int start = line.length();
+        if (reader.isNull(this.column)) {
+            line.append(this.nullString);
+        } else {
+            this.writeValue(reader, line);
+        }
+        return line.length() - start;
+    }
+
+    /**
+     * Writes this column of the next {@code count} records into {@code values}, and sets the end of each field in
+     * {@code ends}, for {@link ColumnarPageFormatter}.
+     */
+    void writeColumn(final PageReader reader, final int count, final StringBuilder values, final int[] ends) {
+        for (int i = 0; i < count && reader.nextRecord(); i++) {
+            this.write(reader, values);
+            ends[i] = values.length();
+        }
+    }
+
+    /**
+     * Lets a string writer pass values of {@code minLength} characters or more to {@code output} in chunks, together with
+     * the line so far, instead of appending them whole into the line. Other writers ignore it.
+     */
+    void streamLargeValues(final LineOutput output, final int minLength) {
+    }
+
+    /**
+     * Returns the number of characters written before the field, which is the delimiter except for the first column.
+     */
+    final int getPrefixLength() {
+        return this.prefix.length();
+    }
+
+    abstract void writeValue(PageReader reader, StringBuilder line);
+
+    private static final class BooleanColumnWriter extends ColumnWriter {
+        BooleanColumnWriter(final Column column, final String prefix, final String nullString, final FieldEscaper escaper) {
+            super(column, prefix, nullString, escaper);
+            this.trueString = escaper.escape("true");
+            this.falseString = escaper.escape("false");
+        }
+
+        @Override
+        void writeValue(final PageReader reader, final StringBuilder line) {
+            line.append(reader.getBoolean(this.column) ? this.trueString : this.falseString);
+        }
+
+        private final String trueString;
+        private final String falseString;
+    }
+
+    private static final class LongColumnWriter extends ColumnWriter {
+        LongColumnWriter(final Column column, final String prefix, final String nullString, final FieldEscaper escaper) {
+            super(column, prefix, nullString, escaper);
+            this.plain = escaper.isPlain(LONG_ALPHABET);
+        }
+
+        @Override
+        void writeValue(final PageReader reader, final StringBuilder line) {
+            final long value = reader.getLong(this.column);
+            if (this.plain) {
+                // StringBuilder#append(long) writes digits directly without creating a String.
+                this.escaper.appendPlainQuote(line);
+                line.append(value);
+                this.escaper.appendPlainQuote(line);
+            } else {
+                this.escaper.appendTo(line, Long.toString(value));
+            }
+        }
+
+        private final boolean plain;
+    }
+
+    private static final class DoubleColumnWriter extends ColumnWriter {
+        DoubleColumnWriter(
+                final Column column,
+                final String prefix,
+                final String nullString,
+                final FieldEscaper escaper,
+                final DoubleFormatter formatter) {
+            super(column, prefix, nullString, escaper);
+            this.plain = escaper.isPlain(DOUBLE_ALPHABET);
+            this.formatter = formatter;
+        }
+
+        @Override
+        void writeValue(final PageReader reader, final StringBuilder line) {
+            final double value = reader.getDouble(this.column);
+            if (this.formatter != null && !Double.isNaN(value) && !Double.isInfinite(value)) {
+                if (this.plain) {
+                    this.escaper.appendPlainQuote(line);
+                    this.formatter.appendTo(line, value);
+                    this.escaper.appendPlainQuote(line);
+                } else {
+                    final int start = line.length();
+                    this.formatter.appendTo(line, value);
+                    final String text = line.substring(start);
+                    line.setLength(start);
+                    this.escaper.appendTo(line, text);
+                }
+            } else if (this.plain) {
+                // StringBuilder#append(double) writes the same digits as Double#toString directly without creating a String.
+                this.escaper.appendPlainQuote(line);
+                line.append(value);
+                this.escaper.appendPlainQuote(line);
+            } else {
+                this.escaper.appendTo(line, Double.toString(value));
+            }
+        }
+
+        private final boolean plain;
+        private final DoubleFormatter formatter;  // null if the column has neither "decimal_places" nor "plain_notation"
+    }
+
+    private static final class StringColumnWriter extends ColumnWriter {
+        StringColumnWriter(
+                final Column column,
+                final String prefix,
+                final String nullString,
+                final FieldEscaper escaper,
+                final StringValueCache cache) {
+            super(column, prefix, nullString, escaper);
+            this.cache = cache;
+            this.largeValueOutput = null;
+            this.largeValueLength = Integer.MAX_VALUE;
+        }
+
+        @Override
+        void streamLargeValues(final LineOutput output, final int minLength) {
+            this.largeValueOutput = output;
+            this.largeValueLength = minLength;
+        }
+
+        @Override
+        void writeValue(final PageReader reader, final StringBuilder line) {
+            final String value = reader.getString(this.column);
+            if (value.length() >= this.largeValueLength) {
+                this.escaper.streamTo(line, value, this.largeValueOutput, LARGE_VALUE_CHUNK_LENGTH);
+            } else if (this.cache != null) {
+                this.cache.appendTo(line, value);
+            } else {
+                this.escaper.appendTo(line, value);
+            }
+        }
+
+        private final StringValueCache cache;  // null if the column does not have "value_cache"
+
+        private LineOutput largeValueOutput;
+        private int largeValueLength;
+    }
+
+    private static final class TimestampColumnWriter extends ColumnWriter {
+        TimestampColumnWriter(
+                final Column column,
+                final String prefix,
+                final String nullString,
+                final FieldEscaper escaper,
+                final TimestampColumnFormatter formatter) {
+            super(column, prefix, nullString, escaper);
+            this.formatter = formatter;
+        }
+
+        @Override
+        void writeValue(final PageReader reader, final StringBuilder line) {
+            this.formatter.appendTo(line, getInstant(reader, this.column));
+        }
+
+        @SuppressWarnings("deprecation")  // For the use of org.embulk.spi.time.Timestamp.
+        private static Instant getInstant(final PageReader reader, final Column column) {
+            try {
+                return reader.getTimestampInstant(column);
+            } catch (final NoSuchMethodError ex) {
+                return reader.getTimestamp(column).getInstant();
+            }
+        }
+
+        private final TimestampColumnFormatter formatter;
+    }
+
+    private static final class JsonColumnWriter extends ColumnWriter {
+        JsonColumnWriter(final Column column, final String prefix, final String nullString, final FieldEscaper escaper) {
+            super(column, prefix, nullString, escaper);
+            this.jsonWriter = new JsonFieldWriter(escaper);
+        }
+
+        @Override
+        void writeValue(final PageReader reader, final StringBuilder line) {
+            this.jsonWriter.appendTo(line, reader.getJsonValue(this.column));
+        }
+
+        private final JsonFieldWriter jsonWriter;
+    }
+
+    // Large values are escaped and encoded in chunks of this length, so that the line does not grow with the value.
+    private static final int LARGE_VALUE_CHUNK_LENGTH = 64 * 1024;
+
+    // Characters which can appear in Long#toString.
+    private static final String LONG_ALPHABET = "-0123456789";
+
+    // Characters which can appear in Double#toString, including "NaN" and "Infinity".
+    private static final String DOUBLE_ALPHABET = "-0123456789.EINaftiny";
+
+    final Column column;
+    final FieldEscaper escaper;
+
+    private final String prefix;
+    private final String nullString;
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageReader;
+
+/**
+ * Formats a {@link Page} column by column in two passes.
+ *
+ * <p>The first pass writes each column of all the records in the page into the column's own buffer, with the end of each
+ * field. A loop reads values of a single type, and calls a single {@link ColumnWriter}. The second pass interleaves the
+ * fields into lines, which are the same as written record by record because each field has its delimiter prefix.
+ *
+ * <p>A {@link PageReader} releases its previous page when a next page is set. Only the counting reader takes the page in
+ * that way. Readers for the columns are created per page, and dropped without being closed.
+ */
+final class ColumnarPageFormatter {
+    ColumnarPageFormatter(final Supplier<PageReader> newPageReader, final ColumnWriter[] columnWriters) {
+        this.newPageReader = newPageReader;
+        this.pageReader = newPageReader.get();
+        this.columnWriters = columnWriters;
+        this.values = new StringBuilder[columnWriters.length];
+        this.chars = new char[columnWriters.length][];
+        this.ends = new int[columnWriters.length][];
+        for (int i = 0; i < columnWriters.length; i++) {
+            this.values[i] = new StringBuilder();
+            this.chars[i] = new char[0];
+            this.ends[i] = new int[0];
+        }
+        this.line = new char[128];
+    }
+
+    void add(final Page page, final LineOutput output) {
+        final int recordCount = countRecords(this.pageReader, page);
+
+        for (int i = 0; i < this.columnWriters.length; i++) {
+            if (this.ends[i].length < recordCount) {
+                this.ends[i] = new int[Math.max(recordCount, this.ends[i].length * 2)];
+            }
+            final PageReader columnReader = this.newPageReader.get();
+            columnReader.setPage(page);
+            final StringBuilder values = this.values[i];
+            values.setLength(0);
+            this.columnWriters[i].writeColumn(columnReader, recordCount, values, this.ends[i]);
+
+            // Copied into an array at once so that fields are copied into lines by System#arraycopy.
+            if (this.chars[i].length < values.length()) {
+                this.chars[i] = new char[Math.max(values.length(), this.chars[i].length * 2)];
+            }
+            values.getChars(0, values.length(), this.chars[i], 0);
+        }
+
+        final int columnCount = this.columnWriters.length;
+        for (int record = 0; record < recordCount; record++) {
+            int length = 0;
+            for (int i = 0; i < columnCount; i++) {
+                final int[] ends = this.ends[i];
+                final int start = record != 0 ? ends[record - 1] : 0;
+                final int size = ends[record] - start;
+                if (this.line.length - length < size) {
+                    this.line = Arrays.copyOf(this.line, Math.max(this.line.length * 2, length + size));
+                }
+                System.arraycopy(this.chars[i], start, this.line, length, size);
+                length += size;
+            }
+            output.addLine(this.line, length);
+        }
+    }
+
+    private static int countRecords(final PageReader pageReader, final Page page) {
+        pageReader.setPage(page);
+        int count = 0;
+        while (pageReader.nextRecord()) {
+            count++;
+        }
+        return count;
+    }
+
+    private final Supplier<PageReader> newPageReader;
+    private final PageReader pageReader;
+    private final ColumnWriter[] columnWriters;
+    private final StringBuilder[] values;
+    private final char[][] chars;
+    private final int[][] ends;
+    private char[] line;
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.util.Map;
+import javax.management.MXBean;
+
+/**
+ * Metrics of a running CSV formatter task exposed through JMX, as of the last page processed.
+ *
+ * <p>It is registered as {@code org.embulk.formatter.csv:type=CsvFormatterMetrics,name=task-N} while a task runs with
+ * {@code metrics: true}.
+ */
+@MXBean
+public interface CsvFormatterMetrics {
+    long getRows();
+
+    long getPages();
+
+    /**
+     * Returns the number of bytes passed to the file output.
+     */
+    long getBytes();
+
+    /**
+     * Returns the number of buffers passed to the file output.
+     */
+    long getBuffers();
+
+    /**
+     * Returns the ratio of the bytes to the total capacity of the buffers passed to the file output.
+     */
+    double getAverageBufferFill();
+
+    double getRowsPerSecond();
+
+    /**
+     * Returns the numbers of characters written for fields before encoding, without delimiters, by column name.
+     */
+    Map<String, Long> getFieldChars();
+
+    /**
+     * Returns the numbers of fields which had any character escaped, by column name.
+     */
+    Map<String, Long> getEscapedFields();
+
+    /**
+     * Returns the numbers of fields which were quoted, by column name.
+     */
+    Map<String, Long> getQuotedFields();
+
+    /**
+     * Returns the average nanoseconds to write a field, sampled per column type.
+     */
+    Map<String, Double> getSampledNanosPerField();
+}
@@ -17,13 +17,19 @@
 package org.embulk.formatter.csv;
 
 import java.nio.charset.Charset;
-import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigSource;
 import org.embulk.config.TaskSource;
 import org.embulk.spi.Column;
-import org.embulk.spi.ColumnVisitor;
 import org.embulk.spi.Exec;
 import org.embulk.spi.FileOutput;
 import org.embulk.spi.FormatterPlugin;
@@ -31,15 +37,14 @@ import org.embulk.spi.Page;
 import org.embulk.spi.PageOutput;
 import org.embulk.spi.PageReader;
 import org.embulk.spi.Schema;
-import org.embulk.spi.json.JsonValue;
+import org.embulk.spi.type.DoubleType;
+import org.embulk.spi.type.StringType;
 import org.embulk.spi.type.TimestampType;
 import org.embulk.util.config.Config;
 import org.embulk.util.config.ConfigDefault;
 import org.embulk.util.config.ConfigMapperFactory;
 import org.embulk.util.config.Task;
-import org.embulk.util.text.LineEncoder;
 import org.embulk.util.text.Newline;
-import org.embulk.util.timestamp.TimestampFormatter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -93,6 +98,12 @@ public class CsvFormatterPlugin implements FormatterPlugin {
         @ConfigDefault("{}")
         Map<String, TimestampColumnOption> getColumnOptions();
 
+        // Names of the columns to be written, in this order. All the columns of the schema if not specified. Columns not
+        // listed are never read from pages.
+        @Config("columns")
+        @ConfigDefault("null")
+        Optional<List<String>> getColumns();
+
         // From org.embulk.spi.util.LineEncoder.EncoderTask.
         @Config("charset")
         @ConfigDefault("\"utf-8\"")
@@ -112,6 +123,121 @@ public class CsvFormatterPlugin implements FormatterPlugin {
         @Config("default_timestamp_format")
         @ConfigDefault("\"%Y-%m-%d %H:%M:%S.%6N %z\"")
         String getDefaultTimestampFormat();
+
+        // Passes encoded buffers to the file output on a dedicated writer thread, so that formatting does not wait for I/O.
+        @Config("background_writer")
+        @ConfigDefault("false")
+        boolean getBackgroundWriter();
+
+        // Encoded records are packed into buffers of at least this size, which are passed to the file output one by one.
+        // Larger buffers mean fewer calls to remote or compressing outputs. The allocator's default size if not specified.
+        // It must be 1024 bytes or more so that a buffer always has room for a character and a newline.
+        @Config("output_buffer_size")
+        @ConfigDefault("null")
+        Optional<Integer> getOutputBufferSize();
+
+        // Passes the current buffer to the file output at the end of a page if it has this number of bytes or more.
+        // Without it, a buffer is passed only when it is full, and it is filled across pages.
+        @Config("flush_threshold")
+        @ConfigDefault("null")
+        Optional<Integer> getFlushThreshold();
+
+        // "gzip_parallel" compresses each file into a multi-member gzip stream, with its blocks deflated in parallel. See
+        // ParallelGzipFileOutput.
+        @Config("compression")
+        @ConfigDefault("\"none\"")
+        String getCompression();
+
+        // Each task of "gzip_parallel" deflates blocks of gzip_block_size bytes on its own gzip_threads threads, the number of
+        // processors if not specified. It holds at most gzip_blocks_in_flight blocks being deflated, twice the threads if not
+        // specified. Counting a compressed member as large as its block, a task takes at most about
+        // (2 * gzip_blocks_in_flight + gzip_threads + 1) * gzip_block_size bytes of memory for compression.
+        @Config("gzip_block_size")
+        @ConfigDefault("1048576")
+        int getGzipBlockSize();
+
+        @Config("gzip_threads")
+        @ConfigDefault("null")
+        Optional<Integer> getGzipThreads();
+
+        @Config("gzip_blocks_in_flight")
+        @ConfigDefault("null")
+        Optional<Integer> getGzipBlocksInFlight();
+
+        // Formats records of a page in parallel by this number of threads including the task's own thread.
+        @Config("formatting_parallelism")
+        @ConfigDefault("1")
+        int getFormattingParallelism();
+
+        // Counts rows, bytes, escaped and quoted fields, and samples time per column type. They are logged on finish, and
+        // exposed through JMX while the task runs. The plain formatting loop is used when disabled.
+        @Config("metrics")
+        @ConfigDefault("false")
+        boolean getMetrics();
+
+        // Formats a page column by column, and then interleaves the fields into lines. See ColumnarPageFormatter. It is not
+        // shown to be faster than the default row loop. Compare them by the "columnar" parameter of PageOutputBenchmark.
+        @Config("columnar_formatting")
+        @ConfigDefault("false")
+        boolean getColumnarFormatting();
+
+        // Starts a next file in the file output when the current file has reached either limit. Files are rotated only at
+        // record boundaries, and the header line is repeated in every file. The size is counted in encoded bytes, which may
+        // be up to a buffer behind with charsets which DirectLineOutput does not support. It is counted before compression,
+        // so a file compressed by "gzip_parallel" is smaller than max_bytes_per_file.
+        @Config("max_rows_per_file")
+        @ConfigDefault("null")
+        Optional<Long> getMaxRowsPerFile();
+
+        @Config("max_bytes_per_file")
+        @ConfigDefault("null")
+        Optional<Long> getMaxBytesPerFile();
+
+        // Writes the byte offset of every row_index_interval-th record of each file into a JSON file on the local file
+        // system, so that a reader can split the file at record boundaries. The index of the n-th file of a task is named
+        // "<row_index_path_prefix><task id>.<n>.index.json" with n in 3 digits. It has the size and the CRC32 checksum of the
+        // file, by which the file is matched to its index. See RowIndex.
+        @Config("row_index_path_prefix")
+        @ConfigDefault("null")
+        Optional<String> getRowIndexPathPrefix();
+
+        @Config("row_index_interval")
+        @ConfigDefault("10000")
+        long getRowIndexInterval();
+
+        // Writes the number of rows, the size and the checksum of each file into a JSON file on the local file system when
+        // the file is finished. They are computed as the bytes pass to the file output, so that files need not be read again.
+        // It is named "<manifest_path_prefix><task id>.<n>.manifest.json" with the same task id as the row index. See FileManifest.
+        @Config("manifest_path_prefix")
+        @ConfigDefault("null")
+        Optional<String> getManifestPathPrefix();
+
+        // "crc32", or "crc32c" on Java 9 or later.
+        @Config("manifest_checksum")
+        @ConfigDefault("\"crc32\"")
+        String getManifestChecksum();
+
+        // Writes records into one file per formatted value of this column in a single pass. All the records of a task are
+        // held until the task finishes, and files are written only then. They are buffered per partition up to the limits
+        // below, over which the largest buffer is spilled into a temporary file. The manifest of each file records its
+        // partition value as written in the CSV, so manifest_path_prefix gives the mapping of files. See PartitionedLineOutput.
+        @Config("partition_by")
+        @ConfigDefault("null")
+        Optional<String> getPartitionBy();
+
+        @Config("max_partitions_in_memory")
+        @ConfigDefault("64")
+        int getMaxPartitionsInMemory();
+
+        @Config("max_partition_buffer_bytes")
+        @ConfigDefault("67108864")
+        long getMaxPartitionBufferBytes();
+
+        // String values of this number of characters or more are escaped and encoded in chunks straight into the output,
+        // so that memory per field does not grow with the value. See FieldEscaper#streamTo.
+        @Config("large_field_length")
+        @ConfigDefault("null")
+        Optional<Integer> getLargeFieldLength();
     }
 
     public interface TimestampColumnOption extends Task {
@@ -122,6 +248,21 @@ public class CsvFormatterPlugin implements FormatterPlugin {
         @Config("format")
         @ConfigDefault("null")
         Optional<String> getFormat();
+
+        // Caches escaped values of a string column with a handful of distinct values. See StringValueCache.
+        @Config("value_cache")
+        @ConfigDefault("false")
+        boolean getValueCache();
+
+        // Writes a double column in this number of decimal places, rounded half up, instead of Double#toString.
+        @Config("decimal_places")
+        @ConfigDefault("null")
+        Optional<Integer> getDecimalPlaces();
+
+        // Writes a double column in the digits of Double#toString without scientific notation. See DoubleFormatter.
+        @Config("plain_notation")
+        @ConfigDefault("false")
+        boolean getPlainNotation();
     }
 
     @Override
@@ -130,8 +271,105 @@ public class CsvFormatterPlugin implements FormatterPlugin {
         final PluginTask task = CONFIG_MAPPER_FACTORY.createConfigMapper().map(config, PluginTask.class);
 
         // validate column_options
-        for (String columnName : task.getColumnOptions().keySet()) {
-            schema.lookupColumn(columnName);  // throws SchemaConfigException
+        for (Map.Entry<String, TimestampColumnOption> columnOption : task.getColumnOptions().entrySet()) {
+            final Column column = schema.lookupColumn(columnOption.getKey());  // throws SchemaConfigException
+            if (columnOption.getValue().getValueCache() && !(column.getType() instanceof StringType)) {
+                throw new ConfigException("value_cache is available only for string columns: " + columnOption.getKey());
+            }
+            if (columnOption.getValue().getDecimalPlaces().isPresent() || columnOption.getValue().getPlainNotation()) {
+                if (!(column.getType() instanceof DoubleType)) {
+                    throw new ConfigException("decimal_places and plain_notation are available only for double columns: " + columnOption.getKey());
+                }
+                final int decimalPlaces = columnOption.getValue().getDecimalPlaces().orElse(0);
+                if (decimalPlaces < 0 || decimalPlaces > DoubleFormatter.MAX_DECIMAL_PLACES) {
+                    throw new ConfigException(String.format("decimal_places must be from 0 to %d: %s",
+                                                            DoubleFormatter.MAX_DECIMAL_PLACES, columnOption.getKey()));
+                }
+            }
+        }
+
+        // validate columns
+        if (task.getColumns().isPresent()) {
+            if (task.getColumns().get().isEmpty()) {
+                throw new ConfigException("columns must have 1 or more column names.");
+            }
+            final Set<String> names = new HashSet<>();
+            for (final String name : task.getColumns().get()) {
+                schema.lookupColumn(name);  // throws SchemaConfigException
+                if (!names.add(name)) {
+                    throw new ConfigException("columns must not have a column twice: " + name);
+                }
+            }
+        }
+
+        if (!COMPRESSION_NONE.equals(task.getCompression()) && !COMPRESSION_GZIP_PARALLEL.equals(task.getCompression())) {
+            throw new ConfigException("compression must be \"none\" or \"gzip_parallel\": " + task.getCompression());
+        }
+        if (task.getGzipBlockSize() < 1) {
+            throw new ConfigException("gzip_block_size must be 1 or more: " + task.getGzipBlockSize());
+        }
+        if (task.getGzipThreads().isPresent() && task.getGzipThreads().get() < 1) {
+            throw new ConfigException("gzip_threads must be 1 or more: " + task.getGzipThreads().get());
+        }
+        if (task.getGzipBlocksInFlight().isPresent() && task.getGzipBlocksInFlight().get() < 1) {
+            throw new ConfigException("gzip_blocks_in_flight must be 1 or more: " + task.getGzipBlocksInFlight().get());
+        }
+        if (task.getRowIndexPathPrefix().isPresent() && COMPRESSION_GZIP_PARALLEL.equals(task.getCompression())) {
+            // Offsets of records are in the uncompressed stream.
+            throw new ConfigException("row_index_path_prefix is not available with compression: " + task.getCompression());
+        }
+        if (task.getRowIndexPathPrefix().isPresent() && task.getRowIndexPathPrefix().equals(task.getManifestPathPrefix())) {
+            throw new ConfigException("row_index_path_prefix and manifest_path_prefix must be different: " + task.getRowIndexPathPrefix().get());
+        }
+        if (task.getManifestPathPrefix().isPresent()) {
+            try {
+                FileManifest.newChecksum(task.getManifestChecksum());
+            } catch (final IllegalArgumentException ex) {
+                throw new ConfigException("manifest_checksum is not available: " + task.getManifestChecksum(), ex);
+            }
+        }
+        if (task.getLargeFieldLength().isPresent() && task.getLargeFieldLength().get() < 1) {
+            throw new ConfigException("large_field_length must be 1 or more: " + task.getLargeFieldLength().get());
+        }
+        if (task.getOutputBufferSize().isPresent() && task.getOutputBufferSize().get() < DirectLineOutput.MIN_BUFFER_SIZE) {
+            throw new ConfigException("output_buffer_size must be " + DirectLineOutput.MIN_BUFFER_SIZE + " or more: " + task.getOutputBufferSize().get());
+        }
+        if (task.getFlushThreshold().isPresent() && task.getFlushThreshold().get() < 1) {
+            throw new ConfigException("flush_threshold must be 1 or more: " + task.getFlushThreshold().get());
+        }
+        if (task.getFormattingParallelism() < 1) {
+            throw new ConfigException("formatting_parallelism must be 1 or more: " + task.getFormattingParallelism());
+        }
+        if (task.getMaxRowsPerFile().isPresent() && task.getMaxRowsPerFile().get() < 1) {
+            throw new ConfigException("max_rows_per_file must be 1 or more: " + task.getMaxRowsPerFile().get());
+        }
+        if (task.getMaxBytesPerFile().isPresent() && task.getMaxBytesPerFile().get() < 1) {
+            throw new ConfigException("max_bytes_per_file must be 1 or more: " + task.getMaxBytesPerFile().get());
+        }
+        if (task.getRowIndexInterval() < 1) {
+            throw new ConfigException("row_index_interval must be 1 or more: " + task.getRowIndexInterval());
+        }
+        if (task.getRowIndexPathPrefix().isPresent() && !DirectLineOutput.isSupported(task.getCharset())) {
+            // Bytes buffered in LineEncoder are not counted, so offsets would not be exact.
+            throw new ConfigException("row_index_path_prefix is not available with charset: " + task.getCharset());
+        }
+        if (task.getPartitionBy().isPresent()) {
+            schema.lookupColumn(task.getPartitionBy().get());  // throws SchemaConfigException
+            if (task.getColumns().isPresent() && !task.getColumns().get().contains(task.getPartitionBy().get())) {
+                throw new ConfigException("partition_by must be one of columns: " + task.getPartitionBy().get());
+            }
+            if (!DirectLineOutput.isSupported(task.getCharset())) {
+                throw new ConfigException("partition_by is not available with charset: " + task.getCharset());
+            }
+            if (task.getMaxRowsPerFile().isPresent() || task.getMaxBytesPerFile().isPresent() || task.getRowIndexPathPrefix().isPresent()) {
+                throw new ConfigException("partition_by is not available with max_rows_per_file, max_bytes_per_file nor row_index_path_prefix.");
+            }
+            if (task.getMaxPartitionsInMemory() < 1) {
+                throw new ConfigException("max_partitions_in_memory must be 1 or more: " + task.getMaxPartitionsInMemory());
+            }
+            if (task.getMaxPartitionBufferBytes() < 1) {
+                throw new ConfigException("max_partition_buffer_bytes must be 1 or more: " + task.getMaxPartitionBufferBytes());
+            }
         }
 
         control.run(task.dump());
@@ -141,198 +379,216 @@ public class CsvFormatterPlugin implements FormatterPlugin {
     public PageOutput open(TaskSource taskSource, final Schema schema,
             FileOutput output) {
         final PluginTask task = CONFIG_MAPPER_FACTORY.createTaskMapper().map(taskSource, PluginTask.class);
-        final LineEncoder encoder = LineEncoder.of(output, task.getNewline(), task.getCharset(), Exec.getBufferAllocator());
-        final TimestampFormatter[] timestampFormatters = newTimestampColumnFormatters(task, schema, task.getColumnOptions());
+        // The formatter is not told the index of its task. Files about the output files of this task are named with this id, and
+        // they are matched to the output files by their sizes and checksums.
+        final String taskId = UUID.randomUUID().toString();
         final char delimiter = task.getDelimiterChar();
         final QuotePolicy quotePolicy = task.getQuotePolicy();
         final char quote = task.getQuoteChar() != '\0' ? task.getQuoteChar() : '"';
+        final String nullString = task.getNullString();
+        final List<Column> outputColumns = getOutputColumns(task, schema);
+        final FormatterMetrics metrics = task.getMetrics() ? new FormatterMetrics(outputColumns, delimiter, quotePolicy, quote, nullString) : null;
+        final FileOutput backgroundOutput = task.getBackgroundWriter() ? new BackgroundFileOutput(output, BACKGROUND_WRITER_QUEUE_SIZE) : null;
+        final FileOutput storedOutput = backgroundOutput != null ? backgroundOutput : output;
+        final FileManifest manifest = task.getManifestPathPrefix()
+                .map(prefix -> new FileManifest(storedOutput, prefix, taskId, task.getManifestChecksum())).orElse(null);
+        final RowIndex rowIndex = task.getRowIndexPathPrefix()
+                .map(prefix -> new RowIndex(manifest != null ? manifest : storedOutput, prefix, taskId, task.getRowIndexInterval())).orElse(null);
+        final FileOutput writtenOutput = newCompressedOutput(task, rowIndex != null ? rowIndex : manifest != null ? manifest : storedOutput);
         final char escape = task.getEscapeChar().orElse(quotePolicy == QuotePolicy.NONE ? '\\' : quote);
         final String newlineInField = task.getNewlineInField().getString();
-        final String nullString = task.getNullString();
+        final StringBuilder header = task.getHeaderLine() ? newHeader(outputColumns, delimiter, quotePolicy, quote, escape, newlineInField, nullString) : null;
+        final LineOutput lineOutput = newLineOutput(task, metrics != null ? metrics.countBytes(writtenOutput) : writtenOutput, header, rowIndex, manifest);
+        final FieldEscaper escaper = FieldEscaper.of(delimiter, quotePolicy, quote, escape, newlineInField, nullString);
+        final List<TimestampColumnFormatter[]> timestampFormatters = new ArrayList<>();
+        final List<StringValueCache[]> stringValueCaches = new ArrayList<>();
+        final Supplier<ColumnWriter[]> newColumnWriters = () -> {
+            final TimestampColumnFormatter[] formatters = newTimestampColumnFormatters(task, schema, outputColumns, task.getColumnOptions(), escaper);
+            final DoubleFormatter[] doubleFormatters = newDoubleFormatters(schema, outputColumns, task.getColumnOptions());
+            final StringValueCache[] caches = newStringValueCaches(schema, outputColumns, task.getColumnOptions(), escaper);
+            timestampFormatters.add(formatters);
+            stringValueCaches.add(caches);
+            return ColumnWriter.compile(outputColumns, delimiter, escaper, nullString, formatters, doubleFormatters, caches);
+        };
+        final ParallelPageFormatter parallelFormatter = newParallelPageFormatter(task, schema, lineOutput, newColumnWriters, metrics);
+        final ColumnWriter[] columnWriters = parallelFormatter == null ? newColumnWriters.get() : null;
+        final ColumnarPageFormatter columnarFormatter = newColumnarPageFormatter(task, schema, columnWriters, metrics);
+        final PartitionedLineOutput partitionedOutput = newPartitionedLineOutput(task, lineOutput, header, manifest, metrics);
+        final int partitionIndex = task.getPartitionBy().map(name -> outputColumns.indexOf(schema.lookupColumn(name))).orElse(-1);
+        streamLargeValues(task, columnWriters, lineOutput, columnarFormatter != null, metrics);
+
+        if (metrics != null) {
+            metrics.register();
+        }
 
-        // create a file
-        encoder.nextFile();
+        // create a file, unless PartitionedLineOutput creates files per partition on finish
+        if (partitionedOutput == null) {
+            lineOutput.nextFile();
 
-        // write header
-        if (task.getHeaderLine()) {
-            writeHeader(schema, encoder, delimiter, quotePolicy, quote, escape, newlineInField, nullString);
+            // write header, which RotatingLineOutput writes by itself at the top of every file
+            if (header != null && !(lineOutput instanceof RotatingLineOutput)) {
+                lineOutput.addLine(header);
+            }
         }
 
         return new PageOutput() {
             private final PageReader pageReader = getPageReader(schema);
-            private final String delimiterString = String.valueOf(delimiter);
 
-            public void add(Page page) {
-                pageReader.setPage(page);
-                while (pageReader.nextRecord()) {
-                    schema.visitColumns(new ColumnVisitor() {
-                            public void booleanColumn(Column column) {
-                                addDelimiter(column);
-                                if (!pageReader.isNull(column)) {
-                                    addValue(Boolean.toString(pageReader.getBoolean(column)));
-                                } else {
-                                    addNullString();
-                                }
-                            }
-
-                            public void longColumn(Column column) {
-                                addDelimiter(column);
-                                if (!pageReader.isNull(column)) {
-                                    addValue(Long.toString(pageReader.getLong(column)));
-                                } else {
-                                    addNullString();
-                                }
-                            }
-
-                            public void doubleColumn(Column column) {
-                                addDelimiter(column);
-                                if (!pageReader.isNull(column)) {
-                                    addValue(Double.toString(pageReader.getDouble(column)));
-                                } else {
-                                    addNullString();
-                                }
-                            }
-
-                            public void stringColumn(Column column) {
-                                addDelimiter(column);
-                                if (!pageReader.isNull(column)) {
-                                    addValue(pageReader.getString(column));
-                                } else {
-                                    addNullString();
-                                }
-                            }
-
-                            public void timestampColumn(Column column) {
-                                addDelimiter(column);
-                                if (!pageReader.isNull(column)) {
-                                    addValue(this.formatTimestamp(column));
-                                } else {
-                                    addNullString();
-                                }
-                            }
-
-                            public void jsonColumn(Column column) {
-                                addDelimiter(column);
-                                if (!pageReader.isNull(column)) {
-                                    final JsonValue value = pageReader.getJsonValue(column);
-                                    addValue(value.toJson());
-                                } else {
-                                    addNullString();
-                                }
-                            }
+            // A record is built up in this buffer, which is reused throughout the task, and then passed to the output at once.
+            private final StringBuilder line = new StringBuilder();
 
-                            private void addDelimiter(Column column) {
-                                if (column.getIndex() != 0) {
-                                    encoder.addText(delimiterString);
-                                }
-                            }
-
-                            private void addValue(String v) {
-                                encoder.addText(setEscapeAndQuoteValue(v, delimiter, quotePolicy, quote, escape, newlineInField, nullString));
-                            }
-
-                            private void addNullString() {
-                                encoder.addText(nullString);
+            public void add(Page page) {
+                if (parallelFormatter != null) {
+                    parallelFormatter.add(page, (DirectLineOutput) lineOutput);
+                } else if (columnarFormatter != null) {
+                    columnarFormatter.add(page, lineOutput);
+                } else if (partitionedOutput != null) {
+                    pageReader.setPage(page);
+                    while (pageReader.nextRecord()) {
+                        line.setLength(0);
+                        int keyStart = 0;
+                        int keyEnd = 0;
+                        for (int i = 0; i < columnWriters.length; i++) {
+                            if (i == partitionIndex) {
+                                keyStart = line.length() + columnWriters[i].getPrefixLength();
                             }
-
-                            @SuppressWarnings("deprecation")  // For the use of org.embulk.spi.time.Timestamp.
-                            private String formatTimestamp(final Column column) {
-                                try {
-                                    final Instant value = pageReader.getTimestampInstant(column);
-                                    return timestampFormatters[column.getIndex()].format(value);
-                                } catch (final NoSuchMethodError ex) {
-                                    final org.embulk.spi.time.Timestamp value = pageReader.getTimestamp(column);
-                                    return timestampFormatters[column.getIndex()].format(value.getInstant());
-                                }
+                            columnWriters[i].write(pageReader, line);
+                            if (i == partitionIndex) {
+                                keyEnd = line.length();
                             }
-                        });
-                    encoder.addNewLine();
+                        }
+                        partitionedOutput.addLine(line, keyStart, keyEnd);
+                    }
+                } else if (metrics != null) {
+                    pageReader.setPage(page);
+                    while (pageReader.nextRecord()) {
+                        line.setLength(0);
+                        metrics.writeRecord(pageReader, columnWriters, line);
+                        lineOutput.addLine(line);
+                    }
+                } else {
+                    pageReader.setPage(page);
+                    while (pageReader.nextRecord()) {
+                        line.setLength(0);
+                        for (final ColumnWriter columnWriter : columnWriters) {
+                            columnWriter.write(pageReader, line);
+                        }
+                        lineOutput.addLine(line);
+                    }
+                }
+                lineOutput.endPage();
+                if (metrics != null) {
+                    metrics.addPage();
                 }
             }
 
             public void finish() {
-                encoder.finish();
+                if (partitionedOutput != null) {
+                    partitionedOutput.finish();
+                } else {
+                    lineOutput.finish();
+                }
+                logTimestampCacheStatistics(schema, timestampFormatters);
+                logStringValueCacheStatistics(schema, stringValueCaches);
+                if (metrics != null) {
+                    metrics.logSummary();
+                }
             }
 
             public void close() {
-                encoder.close();
+                try {
+                    if (partitionedOutput != null) {
+                        partitionedOutput.close();  // Deletes temporary files, and closes the line output.
+                    } else {
+                        lineOutput.close();
+                    }
+                } finally {
+                    if (backgroundOutput != null) {
+                        backgroundOutput.close();  // Stops the writer thread even if the line output does not close it.
+                    }
+                    if (metrics != null) {
+                        metrics.unregister();
+                    }
+                }
             }
         };
     }
 
-    private void writeHeader(Schema schema, LineEncoder encoder, char delimiter, QuotePolicy policy, char quote, char escape, String newline, String nullString) {
-        String delimiterString = String.valueOf(delimiter);
-        for (Column column : schema.getColumns()) {
-            if (column.getIndex() != 0) {
-                encoder.addText(delimiterString);
+    private StringBuilder newHeader(List<Column> columns, char delimiter, QuotePolicy policy, char quote, char escape, String newline, String nullString) {
+        final StringBuilder line = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i != 0) {
+                line.append(delimiter);
             }
-            encoder.addText(setEscapeAndQuoteValue(column.getName(), delimiter, policy, quote, escape, newline, nullString));
+            line.append(setEscapeAndQuoteValue(columns.get(i).getName(), delimiter, policy, quote, escape, newline, nullString));
         }
-        encoder.addNewLine();
+        return line;
     }
 
+    // The header is escaped only once per task. Records are escaped by FieldEscaper directly into the line buffer.
     private String setEscapeAndQuoteValue(String v, char delimiter, QuotePolicy policy, char quote, char escape, String newline, String nullString) {
-        StringBuilder escapedValue = new StringBuilder();
-        char previousChar = ' ';
-
-        boolean isRequireQuote = (policy == QuotePolicy.ALL || policy == QuotePolicy.MINIMAL && v.equals(nullString)) ? true : false;
+        final StringBuilder escapedValue = new StringBuilder();
+        FieldEscaper.of(delimiter, policy, quote, escape, newline, nullString).appendTo(escapedValue, v);
+        return escapedValue.toString();
+    }
 
-        for (int i = 0; i < v.length(); i++) {
-            char c = v.charAt(i);
+    // Quotes a value which is escaped already, as the opening and the closing quotes of a field by FieldEscaper.
+    private String setQuoteValue(String v, char quote) {
+        final FieldEscaper escaper = FieldEscaper.of(',', QuotePolicy.ALL, quote, quote, "\n", "");
+        final StringBuilder sb = new StringBuilder();
+        final int mark = escaper.beginField(sb);
+        sb.append(v);
+        escaper.endField(sb, mark, true);
+        return sb.toString();
+    }
 
-            if (policy != QuotePolicy.NONE && c == quote) {
-                escapedValue.append(escape);
-                escapedValue.append(c);
-                isRequireQuote = true;
-            } else if (c == '\r') {
-                if (policy == QuotePolicy.NONE) {
-                    escapedValue.append(escape);
-                }
-                escapedValue.append(newline);
-                isRequireQuote = true;
-            } else if (c == '\n') {
-                if (previousChar != '\r') {
-                    if (policy == QuotePolicy.NONE) {
-                        escapedValue.append(escape);
-                    }
-                    escapedValue.append(newline);
-                    isRequireQuote = true;
-                }
-            } else if (c == delimiter) {
-                if (policy == QuotePolicy.NONE) {
-                    escapedValue.append(escape);
-                }
-                escapedValue.append(c);
-                isRequireQuote = true;
-            } else {
-                escapedValue.append(c);
-            }
-            previousChar = c;
+    // The columns to be written in their output order, validated in transaction.
+    private static List<Column> getOutputColumns(final PluginTask task, final Schema schema) {
+        if (!task.getColumns().isPresent()) {
+            return schema.getColumns();
         }
-
-        if (policy != QuotePolicy.NONE && isRequireQuote) {
-            return setQuoteValue(escapedValue.toString(), quote);
-        } else {
-            return escapedValue.toString();
+        final List<Column> columns = new ArrayList<>();
+        for (final String name : task.getColumns().get()) {
+            columns.add(schema.lookupColumn(name));
         }
+        return Collections.unmodifiableList(columns);
     }
 
-    private String setQuoteValue(String v, char quote) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(quote);
-        sb.append(v);
-        sb.append(quote);
+    private static FileOutput newCompressedOutput(final PluginTask task, final FileOutput output) {
+        if (!COMPRESSION_GZIP_PARALLEL.equals(task.getCompression())) {
+            return output;
+        }
+        final int threads = task.getGzipThreads().orElse(Runtime.getRuntime().availableProcessors());
+        return new ParallelGzipFileOutput(output, Exec.getBufferAllocator(), task.getGzipBlockSize(), threads,
+                                          task.getGzipBlocksInFlight().orElse(ParallelGzipFileOutput.DEFAULT_BLOCKS_IN_FLIGHT_PER_THREAD * threads));
+    }
 
-        return sb.toString();
+    // RotatingLineOutput counts rows per file also for the row index and the manifest, even without limits. PartitionedLineOutput
+    // counts them by itself.
+    private static LineOutput newLineOutput(
+            final PluginTask task, final FileOutput output, final StringBuilder header, final RowIndex rowIndex, final FileManifest manifest) {
+        if ((task.getOutputBufferSize().isPresent() || task.getFlushThreshold().isPresent()) && !DirectLineOutput.isSupported(task.getCharset())) {
+            logger.warn("output_buffer_size and flush_threshold are ignored for charset {}.", task.getCharset());
+        }
+        final LineOutput lineOutput = LineOutput.of(output, task.getNewline(), task.getCharset(), Exec.getBufferAllocator(),
+                task.getOutputBufferSize().orElse(DirectLineOutput.DEFAULT_BUFFER_SIZE), task.getFlushThreshold().orElse(DirectLineOutput.NO_FLUSH_THRESHOLD));
+        if (task.getPartitionBy().isPresent()
+                || (!task.getMaxRowsPerFile().isPresent() && !task.getMaxBytesPerFile().isPresent() && rowIndex == null && manifest == null)) {
+            return lineOutput;
+        }
+        return new RotatingLineOutput(
+                lineOutput, task.getMaxRowsPerFile().orElse(Long.MAX_VALUE), task.getMaxBytesPerFile().orElse(Long.MAX_VALUE), header, rowIndex, manifest);
     }
 
-    private static TimestampFormatter[] newTimestampColumnFormatters(
+    private static TimestampColumnFormatter[] newTimestampColumnFormatters(
             final PluginTask task,
             final Schema schema,
-            final Map<String, TimestampColumnOption> columnOptions) {
-        final TimestampFormatter[] formatters = new TimestampFormatter[schema.getColumnCount()];
-        int i = 0;
-        for (final Column column : schema.getColumns()) {
+            final List<Column> outputColumns,
+            final Map<String, TimestampColumnOption> columnOptions,
+            final FieldEscaper escaper) {
+        // Indexed by the column index in the schema, only for the columns to be written.
+        final TimestampColumnFormatter[] formatters = new TimestampColumnFormatter[schema.getColumnCount()];
+        for (final Column column : outputColumns) {
             if (column.getType() instanceof TimestampType) {
                 final Optional<TimestampColumnOption> columnOption = Optional.ofNullable(columnOptions.get(column.getName()));
 
@@ -349,13 +605,184 @@ public class CsvFormatterPlugin implements FormatterPlugin {
                 } else {
                     zoneIdString = task.getDefaultTimeZoneId();
                 }
-                formatters[i] = TimestampFormatter.builder(pattern, true).setDefaultZoneFromString(zoneIdString).build();
+                formatters[column.getIndex()] = TimestampColumnFormatter.of(pattern, zoneIdString, escaper);
             }
-            i++;
         }
         return formatters;
     }
 
+    // A double column with "decimal_places" is written in fixed places even if it also has "plain_notation".
+    private static DoubleFormatter[] newDoubleFormatters(
+            final Schema schema,
+            final List<Column> outputColumns,
+            final Map<String, TimestampColumnOption> columnOptions) {
+        final DoubleFormatter[] formatters = new DoubleFormatter[schema.getColumnCount()];
+        for (final Column column : outputColumns) {
+            final TimestampColumnOption columnOption = columnOptions.get(column.getName());
+            if (!(column.getType() instanceof DoubleType) || columnOption == null) {
+                continue;
+            }
+            if (columnOption.getDecimalPlaces().isPresent()) {
+                formatters[column.getIndex()] = DoubleFormatter.fixed(columnOption.getDecimalPlaces().get());
+            } else if (columnOption.getPlainNotation()) {
+                formatters[column.getIndex()] = DoubleFormatter.plain();
+            }
+        }
+        return formatters;
+    }
+
+    private static StringValueCache[] newStringValueCaches(
+            final Schema schema,
+            final List<Column> outputColumns,
+            final Map<String, TimestampColumnOption> columnOptions,
+            final FieldEscaper escaper) {
+        final StringValueCache[] caches = new StringValueCache[schema.getColumnCount()];
+        for (final Column column : outputColumns) {
+            final TimestampColumnOption columnOption = columnOptions.get(column.getName());
+            if (column.getType() instanceof StringType && columnOption != null && columnOption.getValueCache()) {
+                caches[column.getIndex()] = new StringValueCache(escaper);
+            }
+        }
+        return caches;
+    }
+
+    private static PartitionedLineOutput newPartitionedLineOutput(
+            final PluginTask task,
+            final LineOutput lineOutput,
+            final StringBuilder header,
+            final FileManifest manifest,
+            final FormatterMetrics metrics) {
+        if (!task.getPartitionBy().isPresent()) {
+            return null;
+        }
+        if (metrics != null) {
+            logger.warn("metrics counts only pages and bytes with partition_by.");
+        }
+        return new PartitionedLineOutput((DirectLineOutput) lineOutput, task.getNewline(), task.getCharset(), header,
+                                         task.getMaxPartitionsInMemory(), task.getMaxPartitionBufferBytes(), manifest);
+    }
+
+    private static ParallelPageFormatter newParallelPageFormatter(
+            final PluginTask task,
+            final Schema schema,
+            final LineOutput lineOutput,
+            final Supplier<ColumnWriter[]> newColumnWriters,
+            final FormatterMetrics metrics) {
+        if (task.getFormattingParallelism() <= 1) {
+            return null;
+        }
+        if (task.getPartitionBy().isPresent()) {
+            logger.warn("formatting_parallelism is ignored with partition_by. Records are formatted serially.");
+            return null;
+        }
+        if (lineOutput instanceof RotatingLineOutput) {
+            logger.warn("formatting_parallelism is ignored with max_rows_per_file, max_bytes_per_file, row_index_path_prefix or manifest_path_prefix."
+                    + " Records are formatted serially.");
+            return null;
+        }
+        if (!(lineOutput instanceof DirectLineOutput)) {
+            logger.warn("formatting_parallelism is ignored for charset {}. Records are formatted serially.", task.getCharset());
+            return null;
+        }
+        return new ParallelPageFormatter(
+                task.getFormattingParallelism(), () -> getPageReader(schema), newColumnWriters, task.getNewline(), task.getCharset(), metrics);
+    }
+
+    private static ColumnarPageFormatter newColumnarPageFormatter(
+            final PluginTask task,
+            final Schema schema,
+            final ColumnWriter[] columnWriters,
+            final FormatterMetrics metrics) {
+        if (!task.getColumnarFormatting()) {
+            return null;
+        }
+        if (columnWriters == null) {
+            logger.warn("columnar_formatting is ignored with formatting_parallelism. Records are formatted in parallel.");
+            return null;
+        }
+        if (task.getPartitionBy().isPresent()) {
+            logger.warn("columnar_formatting is ignored with partition_by. Records are formatted one by one.");
+            return null;
+        }
+        if (metrics != null) {
+            logger.warn("columnar_formatting is ignored with metrics. Records are formatted one by one.");
+            return null;
+        }
+        return new ColumnarPageFormatter(() -> getPageReader(schema), columnWriters);
+    }
+
+    // Large values are streamed only in the plain loop, where the rest of the record is passed to the same line output.
+    private static void streamLargeValues(
+            final PluginTask task,
+            final ColumnWriter[] columnWriters,
+            final LineOutput lineOutput,
+            final boolean columnar,
+            final FormatterMetrics metrics) {
+        if (!task.getLargeFieldLength().isPresent()) {
+            return;
+        }
+        if (columnWriters == null) {
+            logger.warn("large_field_length is ignored with formatting_parallelism. Large fields are formatted in memory.");
+            return;
+        }
+        if (task.getPartitionBy().isPresent()) {
+            logger.warn("large_field_length is ignored with partition_by. Large fields are formatted in memory.");
+            return;
+        }
+        if (columnar) {
+            logger.warn("large_field_length is ignored with columnar_formatting. Large fields are formatted in memory.");
+            return;
+        }
+        if (metrics != null) {
+            logger.warn("large_field_length is ignored with metrics. Large fields are formatted in memory.");
+            return;
+        }
+        for (final ColumnWriter columnWriter : columnWriters) {
+            columnWriter.streamLargeValues(lineOutput, task.getLargeFieldLength().get());
+        }
+    }
+
+    // Sums up the statistics of each column over the formatters of all the parallel chunks.
+    private static void logTimestampCacheStatistics(final Schema schema, final List<TimestampColumnFormatter[]> formatterSets) {
+        for (int i = 0; i < schema.getColumnCount(); i++) {
+            long fastFormats = 0;
+            long hits = 0;
+            long misses = 0;
+            for (final TimestampColumnFormatter[] formatters : formatterSets) {
+                if (formatters[i] != null) {
+                    fastFormats += formatters[i].getFastFormats();
+                    hits += formatters[i].getHits();
+                    misses += formatters[i].getMisses();
+                }
+            }
+            if (fastFormats + hits + misses > 0) {
+                logger.info("Timestamps of column '{}': {} by the fast formatter, {} cache hits, {} cache misses.",
+                            schema.getColumn(i).getName(), fastFormats, hits, misses);
+            }
+        }
+    }
+
+    // Sums up the statistics of each column over the caches of all the parallel chunks.
+    private static void logStringValueCacheStatistics(final Schema schema, final List<StringValueCache[]> cacheSets) {
+        for (int i = 0; i < schema.getColumnCount(); i++) {
+            long hits = 0;
+            long misses = 0;
+            boolean disabled = false;
+            for (final StringValueCache[] caches : cacheSets) {
+                if (caches[i] != null) {
+                    hits += caches[i].getHits();
+                    misses += caches[i].getMisses();
+                    disabled |= !caches[i].isEnabled();
+                }
+            }
+            if (hits + misses > 0) {
+                logger.info("String value cache of column '{}': {} hits, {} misses, {}% hit rate{}.",
+                            schema.getColumn(i).getName(), hits, misses, hits * 100 / (hits + misses),
+                            disabled ? ", disabled for a low hit rate" : "");
+            }
+        }
+    }
+
     @SuppressWarnings("deprecation")  // For the use of new PageReader().
     private static PageReader getPageReader(final Schema schema) {
         try {
@@ -369,6 +796,13 @@ public class CsvFormatterPlugin implements FormatterPlugin {
         }
     }
 
+    // One buffer is being filled by formatting while these are waiting for, or being written by, the writer thread.
+    private static final int BACKGROUND_WRITER_QUEUE_SIZE = 2;
+
+    private static final String COMPRESSION_NONE = "none";
+
+    private static final String COMPRESSION_GZIP_PARALLEL = "gzip_parallel";
+
     private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY = ConfigMapperFactory.builder().addDefaultModules().build();
 
     private static final Logger logger = LoggerFactory.getLogger(CsvFormatterPlugin.class);
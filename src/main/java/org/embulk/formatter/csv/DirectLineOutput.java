@@ -0,0 +1,394 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.BufferAllocator;
+import org.embulk.spi.FileOutput;
+import org.embulk.util.text.Newline;
+
+/**
+ * Encodes lines in UTF-8, US-ASCII, or a charset with {@link CharsetTable} by itself, and passes {@link Buffer}s to
+ * {@link FileOutput} directly.
+ *
+ * <p>It does not go through {@link CharsetEncoder} except for surrogates in a charset with {@link CharsetTable}. Its output
+ * is the same as {@code LineEncoder}'s, which replaces malformed and unmappable characters with {@code '?'}, or the
+ * replacement of the charset.
+ *
+ * <p>Lines are encoded into a byte array reused throughout the task, which is copied by {@link Buffer#setBytes} into a
+ * {@link Buffer} of {@code bufferSize} bytes, or of the allocator's default size, when it is full. With a
+ * {@code flushThreshold}, it is also passed to {@link FileOutput} at the end of a page if it has that number of bytes or
+ * more. Otherwise, records of next pages are packed into the same buffer. A buffer must have room for the bytes of a
+ * character and a newline, so {@code bufferSize} is {@link #MIN_BUFFER_SIZE} or more.
+ *
+ * <p>A segment output created by {@link #forSegment} has no {@link FileOutput}. Its lines are encoded into a byte array
+ * in the same way, and moved into another output later.
+ */
+final class DirectLineOutput extends LineOutput {
+    DirectLineOutput(final FileOutput output, final Newline newline, final Charset charset, final BufferAllocator allocator) {
+        this(output, newline, charset, allocator, DEFAULT_BUFFER_SIZE, NO_FLUSH_THRESHOLD);
+    }
+
+    DirectLineOutput(
+            final FileOutput output,
+            final Newline newline,
+            final Charset charset,
+            final BufferAllocator allocator,
+            final int bufferSize,
+            final int flushThreshold) {
+        if (!isSupported(charset)) {
+            throw new IllegalArgumentException("DirectLineOutput does not support charset: " + charset);
+        }
+        if (bufferSize != DEFAULT_BUFFER_SIZE && bufferSize < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("DirectLineOutput requires a buffer of " + MIN_BUFFER_SIZE + " bytes or more: " + bufferSize);
+        }
+        this.output = output;
+        this.allocator = allocator;
+        this.bufferSize = bufferSize;
+        this.flushThreshold = flushThreshold;
+        this.ascii = charset.equals(StandardCharsets.US_ASCII);
+        this.table = charset.equals(StandardCharsets.UTF_8) || this.ascii ? null : CharsetTable.of(charset).get();
+        this.tableEncoder = this.table != null ? this.table.newEncoder() : null;
+        this.newline = NEWLINE_BYTES.get(newline);
+        this.chars = new char[128];
+        this.buffer = null;
+        this.bytes = null;
+        this.position = 0;
+        this.flushedBytes = 0;
+    }
+
+    /**
+     * Creates an output which only encodes lines into its own growing byte array, which is then passed to another
+     * {@link DirectLineOutput} by {@link #moveTo}.
+     *
+     * <p>It allocates no {@link Buffer}, and it can be used by a thread other than the task's.
+     */
+    static DirectLineOutput forSegment(final Newline newline, final Charset charset) {
+        return new DirectLineOutput(null, newline, charset, null);
+    }
+
+    static boolean isSupported(final Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII) || CharsetTable.of(charset).isPresent();
+    }
+
+    @Override
+    void nextFile() {
+        this.flush();
+        this.output.nextFile();
+    }
+
+    @Override
+    void addLine(final StringBuilder line) {
+        this.addPart(line);
+        this.writeBytes(this.newline);
+    }
+
+    @Override
+    void addPart(final StringBuilder part) {
+        final int length = part.length();
+        if (this.chars.length < length) {
+            this.chars = new char[Math.max(length, this.chars.length * 2)];
+        }
+        part.getChars(0, length, this.chars, 0);
+        this.encode(this.chars, length);
+    }
+
+    @Override
+    void addLine(final char[] chars, final int length) {
+        this.encode(chars, length);
+        this.writeBytes(this.newline);
+    }
+
+    /**
+     * Passes the bytes encoded by this segment output to {@code target} as they are, and clears this segment.
+     */
+    void moveTo(final DirectLineOutput target) {
+        target.writeBytes(this.bytes, this.position);
+        this.position = 0;
+    }
+
+    /**
+     * Writes the bytes encoded by this segment output into {@code out}, and clears this segment.
+     */
+    void moveTo(final OutputStream out) throws IOException {
+        if (this.position > 0) {
+            out.write(this.bytes, 0, this.position);
+        }
+        this.position = 0;
+    }
+
+    /**
+     * Writes {@code bytes[0, length)}, which are already encoded in the charset of this output, as they are.
+     */
+    void addEncoded(final byte[] bytes, final int length) {
+        this.writeBytes(bytes, length);
+    }
+
+    /**
+     * Discards the bytes encoded by this segment output.
+     */
+    void clear() {
+        this.position = 0;
+    }
+
+    @Override
+    void endPage() {
+        if (this.position >= this.flushThreshold) {
+            this.flush();
+        }
+    }
+
+    @Override
+    void finish() {
+        this.flush();
+        this.output.finish();
+    }
+
+    @Override
+    long getWrittenBytes() {
+        return this.flushedBytes + this.position;
+    }
+
+    @Override
+    public void close() {
+        if (this.buffer != null) {
+            this.buffer.release();
+            this.buffer = null;
+        }
+        if (this.output != null) {
+            this.output.close();
+        }
+    }
+
+    private void encode(final char[] chars, final int length) {
+        this.ensureBuffer();
+        int i = 0;
+        while (i < length) {
+            final int room = this.bytes.length - this.position;
+            if (room < MAX_BYTES_PER_CHAR) {
+                this.makeRoom(MAX_BYTES_PER_CHAR);
+                continue;
+            }
+
+            // Copies a run of ASCII characters without checking the room for each character.
+            final int runEnd = i + Math.min(length - i, room);
+            final byte[] bytes = this.bytes;
+            int position = this.position;
+            while (i < runEnd) {
+                final char c = chars[i];
+                if (c >= 0x80) {
+                    break;
+                }
+                bytes[position++] = (byte) c;
+                i++;
+            }
+            this.position = position;
+
+            if (i < runEnd) {
+                if (this.bytes.length - this.position < MAX_BYTES_PER_CHAR) {
+                    continue;  // Made room at the beginning of the next iteration.
+                }
+                if (this.table != null) {
+                    i = this.encodeNonAsciiByTable(chars, i, length);
+                } else {
+                    i = this.ascii ? this.encodeNonAsciiInAscii(chars, i, length) : this.encodeNonAsciiInUtf8(chars, i, length);
+                }
+            }
+        }
+    }
+
+    // Returns the index of the next character to encode.
+    private int encodeNonAsciiInUtf8(final char[] chars, final int index, final int length) {
+        final char c = chars[index];
+        if (c < 0x800) {
+            this.bytes[this.position++] = (byte) (0xc0 | (c >> 6));
+            this.bytes[this.position++] = (byte) (0x80 | (c & 0x3f));
+            return index + 1;
+        }
+        if (Character.isHighSurrogate(c) && index + 1 < length && Character.isLowSurrogate(chars[index + 1])) {
+            final int codePoint = Character.toCodePoint(c, chars[index + 1]);
+            this.bytes[this.position++] = (byte) (0xf0 | (codePoint >> 18));
+            this.bytes[this.position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+            this.bytes[this.position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            this.bytes[this.position++] = (byte) (0x80 | (codePoint & 0x3f));
+            return index + 2;
+        }
+        if (Character.isSurrogate(c)) {
+            this.bytes[this.position++] = REPLACEMENT;  // Malformed
+            return index + 1;
+        }
+        this.bytes[this.position++] = (byte) (0xe0 | (c >> 12));
+        this.bytes[this.position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        this.bytes[this.position++] = (byte) (0x80 | (c & 0x3f));
+        return index + 1;
+    }
+
+    // Returns the index of the next character to encode.
+    private int encodeNonAsciiInAscii(final char[] chars, final int index, final int length) {
+        final char c = chars[index];
+        this.bytes[this.position++] = REPLACEMENT;  // Unmappable, or malformed
+        if (Character.isHighSurrogate(c) && index + 1 < length && Character.isLowSurrogate(chars[index + 1])) {
+            return index + 2;  // A surrogate pair is unmappable as one character.
+        }
+        return index + 1;
+    }
+
+    // Returns the index of the next character to encode.
+    private int encodeNonAsciiByTable(final char[] chars, final int index, final int length) {
+        final int entry = this.table.get(chars[index]);
+        if (entry != 0) {
+            final int size = entry >>> 24;
+            this.bytes[this.position++] = (byte) (entry >>> 16);
+            if (size > 1) {
+                this.bytes[this.position++] = (byte) (entry >>> 8);
+                if (size > 2) {
+                    this.bytes[this.position++] = (byte) entry;
+                }
+            }
+            return index + 1;
+        }
+
+        // A surrogate pair, a malformed surrogate, or a character with long bytes.
+        final int count = Character.isHighSurrogate(chars[index]) && index + 1 < length && Character.isLowSurrogate(chars[index + 1]) ? 2 : 1;
+        final ByteBuffer encoded;
+        try {
+            encoded = this.tableEncoder.encode(CharBuffer.wrap(chars, index, count));
+        } catch (final CharacterCodingException ex) {
+            throw new IllegalStateException("Unexpected error with replacing actions.", ex);
+        }
+        final int size = encoded.remaining();
+        if (this.bytes.length - this.position < size) {
+            this.makeRoom(size);
+        }
+        encoded.get(this.bytes, this.position, size);
+        this.position += size;
+        return index + count;
+    }
+
+    private void writeBytes(final byte[] source) {
+        this.ensureBuffer();
+        if (this.bytes.length - this.position < source.length) {
+            this.makeRoom(source.length);
+        }
+        System.arraycopy(source, 0, this.bytes, this.position, source.length);
+        this.position += source.length;
+    }
+
+    // Copies source[0, length) which may span over multiple buffers.
+    private void writeBytes(final byte[] source, final int length) {
+        this.ensureBuffer();
+        int offset = 0;
+        while (offset < length) {
+            if (this.position == this.bytes.length) {
+                this.makeRoom(1);
+            }
+            final int size = Math.min(length - offset, this.bytes.length - this.position);
+            System.arraycopy(source, offset, this.bytes, this.position, size);
+            this.position += size;
+            offset += size;
+        }
+    }
+
+    // Flushes the buffer, or grows the byte array of a segment output, to have at least "size" bytes of room. A buffer of
+    // MIN_BUFFER_SIZE or more has room for "size" once it is flushed.
+    private void makeRoom(final int size) {
+        if (this.output == null) {
+            this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.position + size));
+            return;
+        }
+        this.flush();
+        this.ensureBuffer();
+    }
+
+    private void ensureBuffer() {
+        if (this.output == null) {
+            if (this.bytes == null) {
+                this.bytes = new byte[INITIAL_SEGMENT_SIZE];
+            }
+            return;
+        }
+        if (this.buffer == null) {
+            this.buffer = this.bufferSize != DEFAULT_BUFFER_SIZE ? this.allocator.allocate(this.bufferSize) : this.allocator.allocate();
+            if (this.bytes == null || this.bytes.length != this.buffer.capacity()) {
+                this.bytes = new byte[this.buffer.capacity()];
+            }
+            this.position = 0;
+        }
+    }
+
+    private void flush() {
+        if (this.buffer == null) {
+            return;
+        }
+        if (this.position == 0) {
+            return;  // The empty buffer is kept for the next write.
+        }
+        this.buffer.setBytes(0, this.bytes, 0, this.position);
+        this.buffer.limit(this.position);
+        this.output.add(this.buffer);
+        this.flushedBytes += this.position;
+        this.buffer = null;
+        this.position = 0;
+    }
+
+    static final int DEFAULT_BUFFER_SIZE = 0;  // The allocator's default size.
+
+    static final int NO_FLUSH_THRESHOLD = Integer.MAX_VALUE;  // Buffers are passed only when they are full.
+
+    // Far more than the bytes of a character and a newline in any supported charset.
+    static final int MIN_BUFFER_SIZE = 1024;
+
+    private static final int MAX_BYTES_PER_CHAR = 4;
+
+    private static final int INITIAL_SEGMENT_SIZE = 64 * 1024;
+
+    private static final byte REPLACEMENT = (byte) '?';
+
+    // Newlines are ASCII, and the same bytes in all the supported charsets. The arrays are shared, and never modified.
+    private static final EnumMap<Newline, byte[]> NEWLINE_BYTES = new EnumMap<>(Newline.class);
+
+    static {
+        for (final Newline newline : Newline.values()) {
+            NEWLINE_BYTES.put(newline, newline.getString().getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private final FileOutput output;
+    private final BufferAllocator allocator;
+    private final int bufferSize;
+    private final int flushThreshold;
+    private final boolean ascii;
+    private final CharsetTable table;
+    private final CharsetEncoder tableEncoder;
+    private final byte[] newline;
+
+    private char[] chars;
+    private Buffer buffer;
+    private byte[] bytes;
+    private int position;
+    private long flushedBytes;
+}
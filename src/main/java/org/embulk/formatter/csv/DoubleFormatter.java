@@ -0,0 +1,214 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+/**
+ * Formats finite doubles of a column without scientific notation, in a fixed number of decimal places or in plain digits.
+ *
+ * <p>Both are defined on the shortest digits of {@link Double#toString}, which is what users see in the default format.
+ * A fixed value is the digits rounded half up, the same as {@code BigDecimal.valueOf(value).setScale(places, HALF_UP)}.
+ * A plain value is the digits with the exponent expanded, such as {@code 0.00001} for {@code 1.0E-5}, and
+ * {@code 10000000000.0} for {@code 1.0E10}.
+ *
+ * <p>Most fixed values are rounded by integer arithmetic on the value scaled by a power of 10, and their digits are
+ * written directly into the line. Only when the scaled value is too large, or too close to a tie for its rounding error,
+ * the shortest digits are written by {@link StringBuilder#append(double)}, and rounded in place. Plain values are always
+ * written in the latter way, as only values under 10<sup>-3</sup> or from 10<sup>7</sup> need their exponent expanded.
+ */
+final class DoubleFormatter {
+    private DoubleFormatter(final int decimalPlaces) {
+        this.decimalPlaces = decimalPlaces;
+        this.digits = new char[MAX_DIGITS];
+    }
+
+    static DoubleFormatter fixed(final int decimalPlaces) {
+        if (decimalPlaces < 0 || decimalPlaces > MAX_DECIMAL_PLACES) {
+            throw new IllegalArgumentException("decimal places must be from 0 to " + MAX_DECIMAL_PLACES + ": " + decimalPlaces);
+        }
+        return new DoubleFormatter(decimalPlaces);
+    }
+
+    static DoubleFormatter plain() {
+        return new DoubleFormatter(PLAIN);
+    }
+
+    /**
+     * Appends a finite {@code value} into {@code line}, without escaping.
+     */
+    void appendTo(final StringBuilder line, final double value) {
+        if (this.decimalPlaces == PLAIN) {
+            final int start = line.length();
+            line.append(value);
+            this.expandExponent(line, start);
+            return;
+        }
+
+        final double scaled = Math.abs(value) * POWERS_OF_TEN[this.decimalPlaces];
+        if (scaled < FAST_LIMIT) {
+            final double floor = Math.floor(scaled);
+            final double fraction = scaled - floor;  // Exact under 2^52.
+            // The scaled shortest digits are within 1.5 ulp of the scaled value, so they are rounded in the same direction.
+            if (Math.abs(fraction - 0.5) > TIE_MARGIN_ULPS * Math.ulp(scaled)) {
+                final long rounded = (long) floor + (fraction > 0.5 ? 1 : 0);
+                if (value < 0 && rounded != 0) {
+                    line.append('-');
+                }
+                this.appendScaled(line, rounded);
+                return;
+            }
+        }
+        this.appendRounded(line, value);
+    }
+
+    private void appendScaled(final StringBuilder line, final long rounded) {
+        final long unit = LONG_POWERS_OF_TEN[this.decimalPlaces];
+        line.append(rounded / unit);
+        if (this.decimalPlaces == 0) {
+            return;
+        }
+        line.append('.');
+        final int start = line.length();
+        line.setLength(start + this.decimalPlaces);
+        long fraction = rounded % unit;
+        for (int i = start + this.decimalPlaces - 1; i >= start; i--) {
+            line.setCharAt(i, (char) ('0' + fraction % 10));
+            fraction /= 10;
+        }
+    }
+
+    // Rounds the shortest digits half up in place. A carry can add a digit, such as "9.995" into "10.00".
+    private void appendRounded(final StringBuilder line, final double value) {
+        final int start = line.length();
+        line.append(Math.abs(value));
+        this.expandExponent(line, start);
+
+        final int point = line.indexOf(".", start);
+        final int end = point + 1 + this.decimalPlaces;
+        if (line.length() <= end) {
+            while (line.length() < end) {
+                line.append('0');
+            }
+        } else {
+            final boolean up = line.charAt(end) >= '5';
+            line.setLength(this.decimalPlaces == 0 ? point : end);
+            if (up && carry(line, start)) {
+                line.insert(start, '1');
+            }
+        }
+
+        if (value < 0) {
+            for (int i = start; i < line.length(); i++) {
+                final char c = line.charAt(i);
+                if (c != '0' && c != '.') {
+                    line.insert(start, '-');
+                    break;
+                }
+            }
+        }
+    }
+
+    // Rewrites "d.dddE-n" or "d.dddEn" of Double#toString from start into plain digits.
+    private void expandExponent(final StringBuilder line, final int start) {
+        final int e = line.indexOf("E", start);
+        if (e < 0) {
+            return;
+        }
+
+        final boolean negativeExponent = line.charAt(e + 1) == '-';
+        int exponent = 0;
+        for (int i = negativeExponent ? e + 2 : e + 1; i < line.length(); i++) {
+            exponent = exponent * 10 + (line.charAt(i) - '0');
+        }
+        if (negativeExponent) {
+            exponent = -exponent;
+        }
+
+        final int mantissa = line.charAt(start) == '-' ? start + 1 : start;
+        int length = 0;
+        this.digits[length++] = line.charAt(mantissa);
+        for (int i = mantissa + 2; i < e; i++) {  // Skips the point after the first digit.
+            this.digits[length++] = line.charAt(i);
+        }
+        while (length > 1 && this.digits[length - 1] == '0') {
+            length--;
+        }
+
+        line.setLength(mantissa);
+        final int integerDigits = exponent + 1;
+        if (integerDigits <= 0) {
+            line.append("0.");
+            for (int i = integerDigits; i < 0; i++) {
+                line.append('0');
+            }
+            line.append(this.digits, 0, length);
+        } else if (integerDigits >= length) {
+            line.append(this.digits, 0, length);
+            for (int i = length; i < integerDigits; i++) {
+                line.append('0');
+            }
+            line.append(".0");
+        } else {
+            line.append(this.digits, 0, integerDigits);
+            line.append('.');
+            line.append(this.digits, integerDigits, length - integerDigits);
+        }
+    }
+
+    // Adds one to the last digit, and returns true if the carry goes over the first digit.
+    private static boolean carry(final StringBuilder line, final int start) {
+        for (int i = line.length() - 1; i >= start; i--) {
+            final char c = line.charAt(i);
+            if (c == '.') {
+                continue;
+            }
+            if (c != '9') {
+                line.setCharAt(i, (char) (c + 1));
+                return false;
+            }
+            line.setCharAt(i, '0');
+        }
+        return true;
+    }
+
+    static final int MAX_DECIMAL_PLACES = 17;
+
+    private static final int PLAIN = -1;
+
+    // Double#toString needs at most 17 significant digits, but it may write a few more before Java 19 (JDK-4511638).
+    private static final int MAX_DIGITS = 32;
+
+    // Scaled values under this have an exact fraction part, and their ulp is at most 1/2.
+    private static final double FAST_LIMIT = 0x1p52;
+
+    private static final double TIE_MARGIN_ULPS = 4.0;
+
+    private static final double[] POWERS_OF_TEN = new double[MAX_DECIMAL_PLACES + 1];
+
+    private static final long[] LONG_POWERS_OF_TEN = new long[MAX_DECIMAL_PLACES + 1];
+
+    static {
+        long power = 1;
+        for (int i = 0; i <= MAX_DECIMAL_PLACES; i++) {
+            LONG_POWERS_OF_TEN[i] = power;
+            POWERS_OF_TEN[i] = power;  // Exact up to 10^22.
+            power *= 10;
+        }
+    }
+
+    private final int decimalPlaces;  // PLAIN for plain digits
+    private final char[] digits;
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Formats timestamps in a few common Ruby-style patterns with a fixed zone offset, by writing digits directly.
+ *
+ * <p>It supports literal text and {@code %Y %m %d %H %M %S %F %T %N %1N..%9N %L %z %:z %%}, which covers ISO 8601
+ * patterns, {@code "%Y-%m-%d %H:%M:%S"}, and the default {@code "%Y-%m-%d %H:%M:%S.%6N %z"}. The zone must be
+ * {@code "UTC"} or an explicit offset like {@code "+09:00"}. It writes the same text as the general formatter for years
+ * from 1000 to 9999, and declines other years so that the caller falls back.
+ */
+final class FastTimestampFormatter {
+    private FastTimestampFormatter(final int[] elements, final String[] literals, final int offsetSeconds) {
+        this.elements = elements;
+        this.literals = literals;
+        this.offsetSeconds = offsetSeconds;
+    }
+
+    /**
+     * Compiles a pattern, or returns {@code null} if the pattern or the zone is not supported.
+     */
+    static FastTimestampFormatter compile(final String pattern, final String zoneIdString) {
+        if (pattern.startsWith("java:") || pattern.startsWith("ruby:")) {
+            return null;  // Prefixed patterns are interpreted differently by the general formatter.
+        }
+        final ZoneOffset offset = toFixedOffset(zoneIdString);
+        if (offset == null || offset.getTotalSeconds() % 60 != 0) {
+            return null;
+        }
+
+        final List<Integer> elements = new ArrayList<>();
+        final List<String> literals = new ArrayList<>();
+        final StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            final char c = pattern.charAt(i);
+            if (c != '%') {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            if (i + 1 >= pattern.length()) {
+                return null;
+            }
+            final char next = pattern.charAt(i + 1);
+            if (next == '%') {
+                literal.append('%');
+                i += 2;
+                continue;
+            }
+
+            if (literal.length() > 0) {
+                elements.add(LITERAL);
+                literals.add(literal.toString());
+                literal.setLength(0);
+            }
+
+            if (next >= '1' && next <= '9' && i + 2 < pattern.length() && pattern.charAt(i + 2) == 'N') {
+                elements.add(FRACTION_1 + (next - '1'));
+                i += 3;
+                continue;
+            }
+            if (next == ':' && i + 2 < pattern.length() && pattern.charAt(i + 2) == 'z') {
+                elements.add(OFFSET_COLON);
+                i += 3;
+                continue;
+            }
+            switch (next) {
+                case 'Y':
+                    elements.add(YEAR);
+                    break;
+                case 'm':
+                    elements.add(MONTH);
+                    break;
+                case 'd':
+                    elements.add(DAY);
+                    break;
+                case 'H':
+                    elements.add(HOUR);
+                    break;
+                case 'M':
+                    elements.add(MINUTE);
+                    break;
+                case 'S':
+                    elements.add(SECOND);
+                    break;
+                case 'F':
+                    addAll(elements, literals, YEAR, "-", MONTH, "-", DAY);
+                    break;
+                case 'T':
+                    addAll(elements, literals, HOUR, ":", MINUTE, ":", SECOND);
+                    break;
+                case 'N':
+                    elements.add(FRACTION_1 + 8);
+                    break;
+                case 'L':
+                    elements.add(FRACTION_1 + 2);
+                    break;
+                case 'z':
+                    elements.add(OFFSET);
+                    break;
+                default:
+                    return null;
+            }
+            i += 2;
+        }
+        if (literal.length() > 0) {
+            elements.add(LITERAL);
+            literals.add(literal.toString());
+        }
+
+        final int[] elementArray = new int[elements.size()];
+        final String[] literalArray = new String[elements.size()];
+        int literalIndex = 0;
+        for (int j = 0; j < elementArray.length; j++) {
+            elementArray[j] = elements.get(j);
+            if (elementArray[j] == LITERAL) {
+                literalArray[j] = literals.get(literalIndex++);
+            }
+        }
+        return new FastTimestampFormatter(elementArray, literalArray, offset.getTotalSeconds());
+    }
+
+    /**
+     * Returns all characters which this formatter may write.
+     */
+    String getAlphabet() {
+        final StringBuilder alphabet = new StringBuilder("0123456789+-:");
+        for (final String literal : this.literals) {
+            if (literal != null) {
+                alphabet.append(literal);
+            }
+        }
+        return alphabet.toString();
+    }
+
+    /**
+     * Appends the formatted timestamp, or returns {@code false} without appending anything if its year is not supported.
+     */
+    boolean appendTo(final StringBuilder out, final Instant instant) {
+        final long localSecond = instant.getEpochSecond() + this.offsetSeconds;
+        final long epochDay = Math.floorDiv(localSecond, SECONDS_PER_DAY);
+        final int secondOfDay = (int) Math.floorMod(localSecond, SECONDS_PER_DAY);
+
+        // Converts days since 1970-01-01 into the proleptic Gregorian calendar.
+        // See: http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+        final long z = epochDay + 719468;
+        final long era = (z >= 0 ? z : z - 146096) / 146097;
+        final long dayOfEra = z - era * 146097;
+        final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        final int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        final int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 1000 || year > 9999) {
+            return false;
+        }
+
+        for (int i = 0; i < this.elements.length; i++) {
+            final int element = this.elements[i];
+            switch (element) {
+                case LITERAL:
+                    out.append(this.literals[i]);
+                    break;
+                case YEAR:
+                    appendDigits(out, (int) year, 4);
+                    break;
+                case MONTH:
+                    appendDigits(out, month, 2);
+                    break;
+                case DAY:
+                    appendDigits(out, day, 2);
+                    break;
+                case HOUR:
+                    appendDigits(out, secondOfDay / 3600, 2);
+                    break;
+                case MINUTE:
+                    appendDigits(out, (secondOfDay / 60) % 60, 2);
+                    break;
+                case SECOND:
+                    appendDigits(out, secondOfDay % 60, 2);
+                    break;
+                case OFFSET:
+                case OFFSET_COLON:
+                    out.append(this.offsetSeconds < 0 ? '-' : '+');
+                    appendDigits(out, Math.abs(this.offsetSeconds) / 3600, 2);
+                    if (element == OFFSET_COLON) {
+                        out.append(':');
+                    }
+                    appendDigits(out, (Math.abs(this.offsetSeconds) / 60) % 60, 2);
+                    break;
+                default:  // FRACTION_1 .. FRACTION_1 + 8
+                    final int digits = element - FRACTION_1 + 1;
+                    appendDigits(out, instant.getNano() / POWERS_OF_TEN[9 - digits], digits);
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private static void appendDigits(final StringBuilder out, final int value, final int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            out.append((char) ('0' + (value / POWERS_OF_TEN[i]) % 10));
+        }
+    }
+
+    private static void addAll(final List<Integer> elements, final List<String> literals, final Object... parts) {
+        for (final Object part : parts) {
+            if (part instanceof String) {
+                elements.add(LITERAL);
+                literals.add((String) part);
+            } else {
+                elements.add((Integer) part);
+            }
+        }
+    }
+
+    private static ZoneOffset toFixedOffset(final String zoneIdString) {
+        if ("UTC".equals(zoneIdString)) {
+            return ZoneOffset.UTC;
+        }
+        if (zoneIdString != null && OFFSET_PATTERN.matcher(zoneIdString).matches()) {
+            try {
+                return ZoneOffset.of(zoneIdString);
+            } catch (final DateTimeException ex) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static final Pattern OFFSET_PATTERN = Pattern.compile("[+-][0-9]{2}:[0-9]{2}");
+
+    private static final long SECONDS_PER_DAY = 86400;
+
+    private static final int[] POWERS_OF_TEN = { 1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000 };
+
+    private static final int LITERAL = 0;
+    private static final int YEAR = 1;
+    private static final int MONTH = 2;
+    private static final int DAY = 3;
+    private static final int HOUR = 4;
+    private static final int MINUTE = 5;
+    private static final int SECOND = 6;
+    private static final int OFFSET = 7;
+    private static final int OFFSET_COLON = 8;
+    private static final int FRACTION_1 = 9;  // 9 .. 17 for 1 .. 9 digits.
+
+    private final int[] elements;
+    private final String[] literals;
+    private final int offsetSeconds;
+}
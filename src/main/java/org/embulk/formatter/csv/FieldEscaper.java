@@ -0,0 +1,359 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Escapes and quotes a field value in a single scan, and appends the result into a caller-provided buffer.
+ *
+ * <p>It produces exactly the same output as the former {@code CsvFormatterPlugin#setEscapeAndQuoteValue}, but it
+ * does not create any intermediate {@link StringBuilder} nor {@link String} per value.
+ *
+ * <p>Special characters are looked up in 64-bit masks of ASCII characters, instead of comparing every character with each
+ * of them. A value is scanned once for all the special characters. {@link String#indexOf(int)} is not used per special
+ * character, because it cannot be bounded by the earliest match on Java 8, and a value without specials would be scanned
+ * once per special character.
+ *
+ * <p>It is immutable, so escapers from {@link #of} are shared by all the tasks in the JVM.
+ */
+final class FieldEscaper {
+    FieldEscaper(
+            final char delimiter,
+            final CsvFormatterPlugin.QuotePolicy policy,
+            final char quote,
+            final char escape,
+            final String newline,
+            final String nullString) {
+        this.delimiter = delimiter;
+        this.policy = policy;
+        this.quote = quote;
+        this.escape = escape;
+        this.newline = newline;
+        this.nullString = nullString;
+        this.quoting = policy != CsvFormatterPlugin.QuotePolicy.NONE;
+
+        final StringBuilder specials = new StringBuilder("\r\n");
+        if (specials.indexOf(String.valueOf(delimiter)) < 0) {
+            specials.append(delimiter);
+        }
+        if (this.quoting && specials.indexOf(String.valueOf(quote)) < 0) {
+            specials.append(quote);
+        }
+        long lowMask = 0;
+        long highMask = 0;
+        boolean nonAsciiSpecial = false;
+        for (int i = 0; i < specials.length(); i++) {
+            final char c = specials.charAt(i);
+            if (c < 64) {
+                lowMask |= 1L << c;
+            } else if (c < 128) {
+                highMask |= 1L << c;  // Shifted by (c - 64) as a shift distance of long is taken modulo 64.
+            } else {
+                nonAsciiSpecial = true;
+            }
+        }
+        this.lowMask = lowMask;
+        this.highMask = highMask;
+        this.nonAsciiSpecial = nonAsciiSpecial;
+    }
+
+    /**
+     * Returns the escaper shared for the same parameters through a process-wide cache.
+     */
+    static FieldEscaper of(
+            final char delimiter,
+            final CsvFormatterPlugin.QuotePolicy policy,
+            final char quote,
+            final char escape,
+            final String newline,
+            final String nullString) {
+        final List<Object> key = Arrays.asList(delimiter, policy, quote, escape, newline, nullString);
+        final FieldEscaper shared = SHARED.get(key);
+        if (shared != null) {
+            return shared;
+        }
+        final FieldEscaper escaper = new FieldEscaper(delimiter, policy, quote, escape, newline, nullString);
+        if (SHARED.size() < MAX_SHARED) {
+            SHARED.putIfAbsent(key, escaper);
+        }
+        return escaper;
+    }
+
+    /**
+     * Appends the escaped, and quoted if required, value into {@code out}.
+     */
+    void appendTo(final StringBuilder out, final String value) {
+        final int special = this.indexOfSpecial(value);
+        if (special < 0) {
+            // Fast path: nothing to escape. The value is copied as a whole.
+            if (this.requiresQuoteWithoutSpecial(value)) {
+                out.append(this.quote).append(value).append(this.quote);
+            } else {
+                out.append(value);
+            }
+            return;
+        }
+
+        // Any special character makes the value quoted unless the policy is NONE.
+        if (this.quoting) {
+            out.append(this.quote);
+        }
+        this.appendEscaped(out, value, 0, special, value.length());
+        if (this.quoting) {
+            out.append(this.quote);
+        }
+    }
+
+    /**
+     * Returns the index of the first character which needs to be escaped in {@code value}, or {@code -1} if none.
+     */
+    int indexOfSpecial(final String value) {
+        return this.indexOfSpecial(value, 0, value.length());
+    }
+
+    /**
+     * Starts a field which is written in parts by {@link #appendEscapedContent}.
+     *
+     * <p>It appends the opening quote tentatively unless the policy is {@code NONE}.
+     *
+     * @return the mark to be passed to {@link #endField}
+     */
+    int beginField(final StringBuilder out) {
+        final int mark = out.length();
+        if (this.quoting) {
+            out.append(this.quote);
+        }
+        return mark;
+    }
+
+    /**
+     * Appends {@code value[start, end)} escaped as a part of a field started by {@link #beginField}.
+     *
+     * <p>The field is expected not to be split between {@code '\r'} and {@code '\n'}.
+     *
+     * @return true if the part has any special character
+     */
+    boolean appendEscapedContent(final StringBuilder out, final String value, final int start, final int end) {
+        final int special = this.indexOfSpecial(value, start, end);
+        if (special < 0) {
+            out.append(value, start, end);
+            return false;
+        }
+        this.appendEscaped(out, value, start, special, end);
+        return true;
+    }
+
+    /**
+     * Ends a field started by {@link #beginField}.
+     *
+     * <p>It appends the closing quote if the field requires quotes. Otherwise, it removes the tentative opening quote.
+     */
+    void endField(final StringBuilder out, final int mark, final boolean hasSpecial) {
+        if (!this.quoting) {
+            return;
+        }
+        if (hasSpecial || this.policy == CsvFormatterPlugin.QuotePolicy.ALL || this.contentEqualsNullString(out, mark + 1)) {
+            out.append(this.quote);
+        } else {
+            out.deleteCharAt(mark);
+        }
+    }
+
+    /**
+     * Writes {@code value}, escaped and quoted if required, into {@code output} in chunks of about {@code chunkLength}
+     * characters, following the beginning of the line in {@code out}.
+     *
+     * <p>Whether to quote is determined by a scan in advance. Each chunk is escaped into {@code out}, which is then passed
+     * to {@link LineOutput#addPart}, and cleared. The closing quote is left in {@code out} for the rest of the line. So
+     * {@code out} does not grow with the value. Chunks are not split between {@code '\r'} and {@code '\n'}, nor in a
+     * surrogate pair.
+     */
+    void streamTo(final StringBuilder out, final String value, final LineOutput output, final int chunkLength) {
+        final boolean quoted = this.quoting && (this.indexOfSpecial(value) >= 0 || this.requiresQuoteWithoutSpecial(value));
+        if (quoted) {
+            out.append(this.quote);
+        }
+        final int length = value.length();
+        int start = 0;
+        while (start < length) {
+            int end = Math.min(start + chunkLength, length);
+            if (end < length && (Character.isHighSurrogate(value.charAt(end - 1)) || (value.charAt(end - 1) == '\r' && value.charAt(end) == '\n'))) {
+                end++;
+            }
+            this.appendEscapedContent(out, value, start, end);
+            output.addPart(out);
+            out.setLength(0);
+            start = end;
+        }
+        if (quoted) {
+            out.append(this.quote);
+        }
+    }
+
+    /**
+     * Returns true if {@code value}, which is known to have no special characters, must be quoted.
+     */
+    boolean requiresQuoteWithoutSpecial(final String value) {
+        switch (this.policy) {
+            case ALL:
+                return true;
+            case MINIMAL:
+                return value.equals(this.nullString);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns true if any value made only of characters in {@code alphabet} is never escaped.
+     *
+     * <p>Such a value is quoted only when the policy is {@code ALL}. It can be appended with {@link #appendPlainQuote}
+     * around, without scanning its characters.
+     */
+    boolean isPlain(final String alphabet) {
+        if (alphabet.indexOf('\r') >= 0 || alphabet.indexOf('\n') >= 0 || alphabet.indexOf(this.delimiter) >= 0) {
+            return false;
+        }
+        if (this.quoting && alphabet.indexOf(this.quote) >= 0) {
+            return false;
+        }
+        if (this.policy == CsvFormatterPlugin.QuotePolicy.MINIMAL && !this.nullString.isEmpty()) {
+            // A value which equals to the null string is quoted.
+            for (int i = 0; i < this.nullString.length(); i++) {
+                if (alphabet.indexOf(this.nullString.charAt(i)) < 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Appends the quote character if the policy is {@code ALL}, which is to be placed around a plain value.
+     */
+    void appendPlainQuote(final StringBuilder out) {
+        if (this.policy == CsvFormatterPlugin.QuotePolicy.ALL) {
+            out.append(this.quote);
+        }
+    }
+
+    /**
+     * Returns the escaped, and quoted if required, {@code value} as a {@link String} to be reused.
+     */
+    String escape(final String value) {
+        final StringBuilder builder = new StringBuilder();
+        this.appendTo(builder, value);
+        return builder.toString();
+    }
+
+    private int indexOfSpecial(final String value, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            if (this.isSpecial(value.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean contentEqualsNullString(final StringBuilder out, final int start) {
+        if (this.policy != CsvFormatterPlugin.QuotePolicy.MINIMAL || out.length() - start != this.nullString.length()) {
+            return false;
+        }
+        for (int i = 0; i < this.nullString.length(); i++) {
+            if (out.charAt(start + i) != this.nullString.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isSpecial(final char c) {
+        if (c < 64) {
+            return ((this.lowMask >>> c) & 1) != 0;
+        }
+        if (c < 128) {
+            return ((this.highMask >>> c) & 1) != 0;
+        }
+        return this.nonAsciiSpecial && (c == this.delimiter || (this.quoting && c == this.quote));
+    }
+
+    /**
+     * Appends {@code value[start, end)} with escaping, starting from the known first special character at {@code from}.
+     *
+     * <p>Runs of ordinary characters are copied in bulk. Only special characters are handled one by one.
+     */
+    private void appendEscaped(final StringBuilder out, final String value, final int start, final int from, final int end) {
+        out.append(value, start, from);
+
+        // The character just before "from" is never '\r' because '\r' is special by itself.
+        char previousChar = ' ';
+        int runStart = from;
+        for (int i = from; i < end; i++) {
+            final char c = value.charAt(i);
+            if (!this.isSpecial(c)) {
+                previousChar = c;
+                continue;
+            }
+            out.append(value, runStart, i);
+            runStart = i + 1;
+
+            if (this.quoting && c == this.quote) {
+                out.append(this.escape);
+                out.append(c);
+            } else if (c == '\r') {
+                if (!this.quoting) {
+                    out.append(this.escape);
+                }
+                out.append(this.newline);
+            } else if (c == '\n') {
+                if (previousChar != '\r') {
+                    if (!this.quoting) {
+                        out.append(this.escape);
+                    }
+                    out.append(this.newline);
+                }
+            } else {  // c == this.delimiter
+                if (!this.quoting) {
+                    out.append(this.escape);
+                }
+                out.append(c);
+            }
+            previousChar = c;
+        }
+        out.append(value, runStart, end);
+    }
+
+    // Parameters come from configurations, so they are few. The limit is only against unexpected growth.
+    private static final int MAX_SHARED = 1024;
+
+    private static final ConcurrentHashMap<List<Object>, FieldEscaper> SHARED = new ConcurrentHashMap<>();
+
+    private final char delimiter;
+    private final CsvFormatterPlugin.QuotePolicy policy;
+    private final char quote;
+    private final char escape;
+    private final String newline;
+    private final String nullString;
+    private final boolean quoting;
+    private final long lowMask;
+    private final long highMask;
+    private final boolean nonAsciiSpecial;
+}
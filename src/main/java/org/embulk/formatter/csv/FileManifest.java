@@ -0,0 +1,183 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.FileOutput;
+import org.embulk.spi.json.JsonString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Computes the checksum and the size of each output file as its bytes pass to the file output, and writes them with its
+ * number of rows into a JSON manifest file when the file is finished.
+ *
+ * <p>Bytes are counted and checksummed as they are passed to the underlying {@link FileOutput}, after compression if any,
+ * so the manifest describes the files as stored. Rows are told by {@link RotatingLineOutput} through {@link #setRows}
+ * before it moves to a next file, without the header line. A manifest file looks like below, where the checksum is in hex.
+ *
+ * <pre>{"task":"0f8fad5b-d9cb-469f-a165-70867728950e","file":0,"rows":25000,"bytes":1843201,"algorithm":"crc32c","checksum":"5a0c41e3"}</pre>
+ *
+ * <p>With {@code partition_by}, {@link PartitionedLineOutput} tells the rows instead, and the partition of the file through
+ * {@link #setPartition}. It is recorded as {@code "partition"} after {@code "file"}, in the field as written in the CSV.
+ *
+ * <p>The formatter does not know the names of files created by the file output plugin, nor the index of its task. A file is
+ * matched to its manifest by the size and the checksum. A manifest file is named
+ * {@code <path_prefix><task id>.<file number>.manifest.json}, with the same task id and file number as {@link RowIndex}.
+ */
+final class FileManifest implements FileOutput {
+    FileManifest(final FileOutput output, final String pathPrefix, final String taskId, final String algorithm) {
+        this.output = output;
+        this.pathPrefix = pathPrefix;
+        this.taskId = taskId;
+        this.algorithm = algorithm;
+        this.checksum = newChecksum(algorithm);
+        this.bytes = new byte[COPY_SIZE];
+        this.file = -1;
+        this.fileOpen = false;
+        this.rows = 0;
+        this.partition = null;
+        this.fileBytes = 0;
+    }
+
+    /**
+     * Creates a checksum of {@code algorithm}, which is {@code "crc32"}, or {@code "crc32c"} on Java 9 or later.
+     */
+    static Checksum newChecksum(final String algorithm) {
+        switch (algorithm) {
+            case "crc32":
+                return new CRC32();
+            case "crc32c":
+                // java.util.zip.CRC32C is not in Java 8, which this plugin is built for.
+                try {
+                    return (Checksum) Class.forName("java.util.zip.CRC32C").getConstructor().newInstance();
+                } catch (final ReflectiveOperationException ex) {
+                    throw new IllegalArgumentException("crc32c requires Java 9 or later.", ex);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown checksum: " + algorithm);
+        }
+    }
+
+    /**
+     * Sets the number of rows of the current file.
+     */
+    void setRows(final long rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * Sets the partition value of the current file.
+     */
+    void setPartition(final String partition) {
+        this.partition = partition;
+    }
+
+    @Override
+    public void nextFile() {
+        this.finishFile();
+        this.output.nextFile();
+        this.file++;
+        this.fileOpen = true;
+        this.rows = 0;
+        this.partition = null;
+        this.fileBytes = 0;
+        this.checksum.reset();
+    }
+
+    @Override
+    public void add(final Buffer buffer) {
+        final int limit = buffer.limit();
+        for (int index = 0; index < limit; index += COPY_SIZE) {
+            final int length = Math.min(limit - index, COPY_SIZE);
+            buffer.getBytes(index, this.bytes, 0, length);
+            this.checksum.update(this.bytes, 0, length);
+        }
+        this.fileBytes += limit;
+        this.output.add(buffer);
+    }
+
+    @Override
+    public void finish() {
+        this.finishFile();
+        this.output.finish();
+    }
+
+    @Override
+    public void close() {
+        this.output.close();
+    }
+
+    /**
+     * Returns the path of the manifest of the file {@code file} of the task {@code taskId}.
+     */
+    static String pathOf(final String pathPrefix, final String taskId, final int file) {
+        return String.format("%s%s.%03d.manifest.json", pathPrefix, taskId, file);
+    }
+
+    private void finishFile() {
+        if (!this.fileOpen) {
+            return;
+        }
+        this.fileOpen = false;
+
+        final StringBuilder json = new StringBuilder();
+        json.append("{\"task\":\"").append(this.taskId)
+                .append("\",\"file\":").append(this.file);
+        if (this.partition != null) {
+            json.append(",\"partition\":").append(JsonString.of(this.partition).toJson());
+        }
+        json.append(",\"rows\":").append(this.rows)
+                .append(",\"bytes\":").append(this.fileBytes)
+                .append(",\"algorithm\":\"").append(this.algorithm)
+                .append("\",\"checksum\":\"").append(String.format("%08x", this.checksum.getValue()))
+                .append("\"}\n");
+
+        final Path path = Paths.get(pathOf(this.pathPrefix, this.taskId, this.file));
+        try {
+            Files.write(path, json.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (final IOException ex) {
+            throw new RuntimeException("Failed to write a manifest file: " + path, ex);
+        }
+        logger.info("Wrote a manifest of {} rows in {} bytes to {}.", this.rows, this.fileBytes, path);
+    }
+
+    // Bytes of a buffer are checksummed through an array of this size.
+    private static final int COPY_SIZE = 64 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(FileManifest.class);
+
+    private final FileOutput output;
+    private final String pathPrefix;
+    private final String taskId;
+    private final String algorithm;
+    private final Checksum checksum;
+    private final byte[] bytes;
+
+    private int file;
+    private boolean fileOpen;
+    private long rows;
+    private String partition;
+    private long fileBytes;
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.Column;
+import org.embulk.spi.FileOutput;
+import org.embulk.spi.PageReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts rows, pages, output bytes and buffers, characters, escaped and quoted fields per column, and sampled time per
+ * column type of a task.
+ *
+ * <p>Records are written through {@link #writeRecord} instead of the plain loop only when metrics are enabled. The length
+ * of each field is taken from {@link ColumnWriter#writeCounted}, and whether it is quoted or escaped is determined from its
+ * written text. Under quoting, a field is quoted if and only if it starts with the quote. Under {@code MINIMAL}, a quoted
+ * field is escaped unless it is the null string, so fields are not scanned again. Under {@code ALL}, the content of a field
+ * is scanned for the delimiter, the quote, {@code '\r'} or {@code '\n'}. Under {@code NONE}, escaped characters are the
+ * only way to have the delimiter, {@code '\r'} or {@code '\n'}, which the field is scanned for.
+ *
+ * <p>Counters are updated without synchronization by the task's thread, or by a chunk of {@link ParallelPageFormatter}
+ * which is added up after the page. They are published to JMX as a snapshot per page.
+ */
+final class FormatterMetrics implements CsvFormatterMetrics {
+    FormatterMetrics(
+            final List<Column> columns,
+            final char delimiter,
+            final CsvFormatterPlugin.QuotePolicy policy,
+            final char quote,
+            final String nullString) {
+        final int columnCount = columns.size();
+        this.columns = columns;
+        this.delimiter = delimiter;
+        this.policy = policy;
+        this.quote = quote;
+        this.nullString = nullString;
+        this.quoting = policy != CsvFormatterPlugin.QuotePolicy.NONE;
+        this.chars = new long[columnCount];
+        this.escaped = new long[columnCount];
+        this.quoted = new long[columnCount];
+        this.nanos = new long[columnCount];
+        this.samples = new long[columnCount];
+        this.startNanos = System.nanoTime();
+        this.snapshot = new Snapshot(this);
+        this.objectName = null;
+    }
+
+    /**
+     * Creates metrics for a chunk of {@link ParallelPageFormatter}, to be added by {@link #addChunk}.
+     */
+    FormatterMetrics newChunk() {
+        return new FormatterMetrics(this.columns, this.delimiter, this.policy, this.quote, this.nullString);
+    }
+
+    /**
+     * Wraps {@code output} to count bytes and buffers passed to it.
+     */
+    FileOutput countBytes(final FileOutput output) {
+        return new FileOutput() {
+            @Override
+            public void nextFile() {
+                output.nextFile();
+            }
+
+            @Override
+            public void add(final Buffer buffer) {
+                FormatterMetrics.this.bytes += buffer.limit();
+                FormatterMetrics.this.buffers++;
+                FormatterMetrics.this.bufferCapacity += buffer.capacity();
+                output.add(buffer);
+            }
+
+            @Override
+            public void finish() {
+                output.finish();
+            }
+
+            @Override
+            public void close() {
+                output.close();
+            }
+        };
+    }
+
+    /**
+     * Writes a record into {@code line} in the same way as the plain loop, and counts it.
+     */
+    void writeRecord(final PageReader reader, final ColumnWriter[] columnWriters, final StringBuilder line) {
+        final boolean sampling = (this.rows++ & (SAMPLE_INTERVAL - 1)) == 0;
+        for (int i = 0; i < columnWriters.length; i++) {
+            final ColumnWriter columnWriter = columnWriters[i];
+            final int length;
+            if (sampling) {
+                final long startNanos = System.nanoTime();
+                length = columnWriter.writeCounted(reader, line);
+                this.nanos[i] += System.nanoTime() - startNanos;
+                this.samples[i]++;
+            } else {
+                length = columnWriter.writeCounted(reader, line);
+            }
+            this.chars[i] += length;
+            if (length > 0 && !reader.isNull(columnWriter.column)) {
+                this.countField(i, line, line.length() - length);
+            }
+        }
+    }
+
+    /**
+     * Adds up counters of a chunk, and resets them.
+     */
+    void addChunk(final FormatterMetrics chunk) {
+        this.rows += chunk.rows;
+        chunk.rows = 0;
+        for (int i = 0; i < this.escaped.length; i++) {
+            this.chars[i] += chunk.chars[i];
+            this.escaped[i] += chunk.escaped[i];
+            this.quoted[i] += chunk.quoted[i];
+            this.nanos[i] += chunk.nanos[i];
+            this.samples[i] += chunk.samples[i];
+            chunk.chars[i] = 0;
+            chunk.escaped[i] = 0;
+            chunk.quoted[i] = 0;
+            chunk.nanos[i] = 0;
+            chunk.samples[i] = 0;
+        }
+    }
+
+    /**
+     * Counts a page, and publishes the counters.
+     */
+    void addPage() {
+        this.pages++;
+        this.snapshot = new Snapshot(this);
+    }
+
+    void register() {
+        try {
+            final ObjectName objectName = new ObjectName("org.embulk.formatter.csv:type=CsvFormatterMetrics,name=task-" + SEQUENCE.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (final JMException | RuntimeException ex) {
+            logger.warn("Failed to register CSV formatter metrics to JMX.", ex);
+        }
+    }
+
+    void unregister() {
+        if (this.objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+        } catch (final JMException | RuntimeException ex) {
+            logger.warn("Failed to unregister CSV formatter metrics from JMX.", ex);
+        }
+        this.objectName = null;
+    }
+
+    void logSummary() {
+        final Snapshot snapshot = new Snapshot(this);
+        this.snapshot = snapshot;
+        logger.info("CSV formatter metrics: {} rows in {} pages, {} bytes in {} buffers filled {}% on average, {} rows/s.",
+                    snapshot.rows, snapshot.pages, snapshot.bytes, snapshot.buffers, String.format("%.1f", snapshot.getAverageBufferFill() * 100),
+                    String.format("%.1f", snapshot.getRowsPerSecond()));
+        for (int i = 0; i < this.escaped.length; i++) {
+            logger.info("CSV formatter metrics of column '{}': {} characters, {} escaped, {} quoted fields.",
+                        this.columns.get(i).getName(), snapshot.chars[i], snapshot.escaped[i], snapshot.quoted[i]);
+        }
+        for (final Map.Entry<String, Double> entry : snapshot.getSampledNanosPerField().entrySet()) {
+            logger.info("CSV formatter metrics of {} columns: {} ns per field, sampled.", entry.getKey(), String.format("%.1f", entry.getValue()));
+        }
+    }
+
+    @Override
+    public long getRows() {
+        return this.snapshot.rows;
+    }
+
+    @Override
+    public long getPages() {
+        return this.snapshot.pages;
+    }
+
+    @Override
+    public long getBytes() {
+        return this.snapshot.bytes;
+    }
+
+    @Override
+    public long getBuffers() {
+        return this.snapshot.buffers;
+    }
+
+    @Override
+    public double getAverageBufferFill() {
+        return this.snapshot.getAverageBufferFill();
+    }
+
+    @Override
+    public double getRowsPerSecond() {
+        return this.snapshot.getRowsPerSecond();
+    }
+
+    @Override
+    public Map<String, Long> getFieldChars() {
+        return this.snapshot.byColumn(this.snapshot.chars);
+    }
+
+    @Override
+    public Map<String, Long> getEscapedFields() {
+        return this.snapshot.byColumn(this.snapshot.escaped);
+    }
+
+    @Override
+    public Map<String, Long> getQuotedFields() {
+        return this.snapshot.byColumn(this.snapshot.quoted);
+    }
+
+    @Override
+    public Map<String, Double> getSampledNanosPerField() {
+        return this.snapshot.getSampledNanosPerField();
+    }
+
+    private void countField(final int index, final StringBuilder line, final int start) {
+        final int end = line.length();
+        if (!this.quoting) {
+            if (this.hasSpecial(line, start, end)) {
+                this.escaped[index]++;
+            }
+            return;
+        }
+        if (line.charAt(start) != this.quote) {
+            return;
+        }
+        this.quoted[index]++;
+        if (this.policy == CsvFormatterPlugin.QuotePolicy.MINIMAL) {
+            // A field is quoted only for its special characters, or for being the null string.
+            if (!this.contentEquals(line, start + 1, end - 1, this.nullString)) {
+                this.escaped[index]++;
+            }
+        } else if (this.hasSpecial(line, start + 1, end - 1)) {
+            this.escaped[index]++;
+        }
+    }
+
+    private boolean hasSpecial(final StringBuilder line, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            final char c = line.charAt(i);
+            if (c == this.delimiter || c == '\r' || c == '\n' || (this.quoting && c == this.quote)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contentEquals(final StringBuilder line, final int start, final int end, final String text) {
+        if (end - start != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (line.charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Snapshot {
+        Snapshot(final FormatterMetrics metrics) {
+            this.columns = metrics.columns;
+            this.rows = metrics.rows;
+            this.pages = metrics.pages;
+            this.bytes = metrics.bytes;
+            this.buffers = metrics.buffers;
+            this.bufferCapacity = metrics.bufferCapacity;
+            this.elapsedNanos = System.nanoTime() - metrics.startNanos;
+            this.chars = metrics.chars.clone();
+            this.escaped = metrics.escaped.clone();
+            this.quoted = metrics.quoted.clone();
+            this.nanos = metrics.nanos.clone();
+            this.samples = metrics.samples.clone();
+        }
+
+        double getRowsPerSecond() {
+            return this.elapsedNanos > 0 ? this.rows * 1e9 / this.elapsedNanos : 0.0;
+        }
+
+        double getAverageBufferFill() {
+            return this.bufferCapacity > 0 ? (double) this.bytes / this.bufferCapacity : 0.0;
+        }
+
+        Map<String, Long> byColumn(final long[] counts) {
+            final Map<String, Long> map = new LinkedHashMap<>();
+            for (int i = 0; i < counts.length; i++) {
+                map.put(this.columns.get(i).getName(), counts[i]);
+            }
+            return Collections.unmodifiableMap(map);
+        }
+
+        Map<String, Double> getSampledNanosPerField() {
+            final Map<String, long[]> sums = new LinkedHashMap<>();
+            for (int i = 0; i < this.columns.size(); i++) {
+                final long[] sum = sums.computeIfAbsent(this.columns.get(i).getType().getName(), name -> new long[2]);
+                sum[0] += this.nanos[i];
+                sum[1] += this.samples[i];
+            }
+            final Map<String, Double> map = new LinkedHashMap<>();
+            for (final Map.Entry<String, long[]> entry : sums.entrySet()) {
+                if (entry.getValue()[1] > 0) {
+                    map.put(entry.getKey(), (double) entry.getValue()[0] / entry.getValue()[1]);
+                }
+            }
+            return Collections.unmodifiableMap(map);
+        }
+
+        private final List<Column> columns;
+        private final long rows;
+        private final long pages;
+        private final long bytes;
+        private final long buffers;
+        private final long bufferCapacity;
+        private final long elapsedNanos;
+        private final long[] chars;
+        private final long[] escaped;
+        private final long[] quoted;
+        private final long[] nanos;
+        private final long[] samples;
+    }
+
+    // Rows are timed one in this number of rows, which must be a power of 2.
+    private static final int SAMPLE_INTERVAL = 64;
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private static final Logger logger = LoggerFactory.getLogger(FormatterMetrics.class);
+
+    private final List<Column> columns;
+    private final char delimiter;
+    private final CsvFormatterPlugin.QuotePolicy policy;
+    private final char quote;
+    private final String nullString;
+    private final boolean quoting;
+    private final long[] chars;
+    private final long[] escaped;
+    private final long[] quoted;
+    private final long[] nanos;
+    private final long[] samples;
+    private final long startNanos;
+
+    private long rows;
+    private long pages;
+    private long bytes;
+    private long buffers;
+    private long bufferCapacity;
+    private volatile Snapshot snapshot;
+    private ObjectName objectName;
+}
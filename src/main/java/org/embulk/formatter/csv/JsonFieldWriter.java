@@ -0,0 +1,128 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.util.Map;
+import org.embulk.spi.json.JsonArray;
+import org.embulk.spi.json.JsonObject;
+import org.embulk.spi.json.JsonString;
+import org.embulk.spi.json.JsonValue;
+
+/**
+ * Writes a {@link JsonValue} as a CSV field by walking the tree, without building the whole JSON text as a String.
+ *
+ * <p>The output is the same as escaping {@link JsonValue#toJson()} by {@link FieldEscaper}. Structural characters and
+ * strings are escaped for CSV as they are written. A string which needs any escape in JSON is delegated to its own
+ * {@link JsonString#toJson()}, as well as numbers, so that the JSON representation is exactly the same.
+ */
+final class JsonFieldWriter {
+    JsonFieldWriter(final FieldEscaper escaper) {
+        this.escaper = escaper;
+    }
+
+    void appendTo(final StringBuilder line, final JsonValue value) {
+        final int mark = this.escaper.beginField(line);
+        this.hasSpecial = false;
+        this.writeValue(line, value);
+        this.escaper.endField(line, mark, this.hasSpecial);
+    }
+
+    private void writeValue(final StringBuilder line, final JsonValue value) {
+        switch (value.getEntityType()) {
+            case NULL:
+                this.writeText(line, "null");
+                break;
+            case BOOLEAN:
+                this.writeText(line, value.asJsonBoolean().booleanValue() ? "true" : "false");
+                break;
+            case STRING:
+                this.writeString(line, value.asJsonString().getString(), value);
+                break;
+            case ARRAY:
+                this.writeArray(line, value.asJsonArray());
+                break;
+            case OBJECT:
+                this.writeObject(line, value.asJsonObject());
+                break;
+            default:  // LONG, DOUBLE
+                this.writeText(line, value.toJson());
+                break;
+        }
+    }
+
+    private void writeArray(final StringBuilder line, final JsonArray array) {
+        this.writeText(line, "[");
+        for (int i = 0; i < array.size(); i++) {
+            if (i > 0) {
+                this.writeText(line, ",");
+            }
+            this.writeValue(line, array.get(i));
+        }
+        this.writeText(line, "]");
+    }
+
+    private void writeObject(final StringBuilder line, final JsonObject object) {
+        this.writeText(line, "{");
+        boolean first = true;
+        for (final Map.Entry<String, JsonValue> entry : object.entrySet()) {
+            if (!first) {
+                this.writeText(line, ",");
+            }
+            first = false;
+            this.writeString(line, entry.getKey(), null);
+            this.writeText(line, ":");
+            this.writeValue(line, entry.getValue());
+        }
+        this.writeText(line, "}");
+    }
+
+    private void writeString(final StringBuilder line, final String string, final JsonValue value) {
+        if (!isJsonPlain(string)) {
+            this.writeText(line, value != null ? value.toJson() : JsonString.of(string).toJson());
+            return;
+        }
+        this.writeText(line, "\"");
+        this.writeText(line, string);
+        this.writeText(line, "\"");
+    }
+
+    private void writeText(final StringBuilder line, final String text) {
+        if (this.escaper.appendEscapedContent(line, text, 0, text.length())) {
+            this.hasSpecial = true;
+        }
+    }
+
+    /**
+     * Returns true if {@code string} is written as-is in a JSON string literal.
+     *
+     * <p>It is conservative. Control characters, {@code '"'}, {@code '\\'}, C1 controls, surrogates, and line/paragraph
+     * separators are left to {@link JsonString#toJson()}.
+     */
+    private static boolean isJsonPlain(final String string) {
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            if (c < 0x20 || c == '"' || c == '\\' || (c >= 0x7f && c < 0xa0) || Character.isSurrogate(c) || c == 0x2028 || c == 0x2029) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final FieldEscaper escaper;
+
+    private boolean hasSpecial;
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.nio.charset.Charset;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.BufferAllocator;
+import org.embulk.spi.FileOutput;
+import org.embulk.util.text.LineEncoder;
+import org.embulk.util.text.Newline;
+
+/**
+ * Encodes formatted lines and writes them into {@link FileOutput}.
+ *
+ * <p>UTF-8, US-ASCII, and charsets with {@link CharsetTable} are encoded by {@link DirectLineOutput} straight into
+ * {@link Buffer}s. Other charsets fall back to {@link LineEncoder}.
+ */
+abstract class LineOutput implements AutoCloseable {
+    static LineOutput of(final FileOutput output, final Newline newline, final Charset charset, final BufferAllocator allocator) {
+        return of(output, newline, charset, allocator, DirectLineOutput.DEFAULT_BUFFER_SIZE, DirectLineOutput.NO_FLUSH_THRESHOLD);
+    }
+
+    /**
+     * Creates an output with the buffer size and the flush threshold of {@link DirectLineOutput}, which are ignored by
+     * {@link LineEncoder}.
+     */
+    static LineOutput of(
+            final FileOutput output,
+            final Newline newline,
+            final Charset charset,
+            final BufferAllocator allocator,
+            final int bufferSize,
+            final int flushThreshold) {
+        if (DirectLineOutput.isSupported(charset)) {
+            return new DirectLineOutput(output, newline, charset, allocator, bufferSize, flushThreshold);
+        }
+        return new EncoderLineOutput(output, newline, charset, allocator);
+    }
+
+    abstract void nextFile();
+
+    /**
+     * Writes {@code line} followed by the newline.
+     */
+    abstract void addLine(StringBuilder line);
+
+    /**
+     * Writes {@code chars[0, length)} followed by the newline.
+     */
+    abstract void addLine(char[] chars, int length);
+
+    /**
+     * Writes {@code part} as the beginning of a line, which is continued by more parts, and ended by {@link #addLine}.
+     *
+     * <p>The part must not end in the middle of a surrogate pair.
+     */
+    abstract void addPart(StringBuilder part);
+
+    /**
+     * Tells that the records of a page have been written. An output may pass its buffered bytes to {@link FileOutput} here.
+     */
+    void endPage() {
+    }
+
+    abstract void finish();
+
+    /**
+     * Returns the number of bytes written so far throughout all the files.
+     *
+     * <p>It includes bytes buffered by {@link DirectLineOutput}. Bytes buffered by {@link LineEncoder} are not counted until
+     * they are passed to {@link FileOutput}, which is up to a buffer behind.
+     */
+    abstract long getWrittenBytes();
+
+    @Override
+    public abstract void close();
+
+    private static final class EncoderLineOutput extends LineOutput {
+        EncoderLineOutput(final FileOutput output, final Newline newline, final Charset charset, final BufferAllocator allocator) {
+            this.encoder = LineEncoder.of(new FileOutput() {
+                    @Override
+                    public void nextFile() {
+                        output.nextFile();
+                    }
+
+                    @Override
+                    public void add(final Buffer buffer) {
+                        EncoderLineOutput.this.writtenBytes += buffer.limit();
+                        output.add(buffer);
+                    }
+
+                    @Override
+                    public void finish() {
+                        output.finish();
+                    }
+
+                    @Override
+                    public void close() {
+                        output.close();
+                    }
+                }, newline, charset, allocator);
+            this.writtenBytes = 0;
+        }
+
+        @Override
+        void nextFile() {
+            this.encoder.nextFile();
+        }
+
+        @Override
+        void addLine(final StringBuilder line) {
+            this.encoder.addText(line.toString());
+            this.encoder.addNewLine();
+        }
+
+        @Override
+        void addLine(final char[] chars, final int length) {
+            this.encoder.addText(new String(chars, 0, length));
+            this.encoder.addNewLine();
+        }
+
+        @Override
+        void addPart(final StringBuilder part) {
+            this.encoder.addText(part.toString());
+        }
+
+        @Override
+        void finish() {
+            this.encoder.finish();
+        }
+
+        @Override
+        long getWrittenBytes() {
+            return this.writtenBytes;
+        }
+
+        @Override
+        public void close() {
+            this.encoder.close();
+        }
+
+        private final LineEncoder encoder;
+
+        private long writtenBytes;
+    }
+}
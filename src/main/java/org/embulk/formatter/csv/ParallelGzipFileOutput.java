@@ -0,0 +1,249 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.BufferAllocator;
+import org.embulk.spi.FileOutput;
+
+/**
+ * Compresses each file into a multi-member gzip stream, with its blocks deflated in parallel.
+ *
+ * <p>Bytes passed to this output are cut into blocks of {@code blockSize} bytes. Each block is deflated into a complete
+ * gzip member on a pool of {@code threads} threads dedicated to this output, independently of the other blocks. Members
+ * are passed to the underlying {@link FileOutput} in the original order on the caller's thread. A concatenation of gzip
+ * members is a valid gzip stream (RFC 1952), which is decompressed by {@code gzip -d} and
+ * {@link java.util.zip.GZIPInputStream} into the concatenation of their contents.
+ *
+ * <p>The caller waits for the oldest block when more than {@code maxBlocksInFlight} blocks are being deflated. So the
+ * memory of this output is bounded by about {@code maxBlocksInFlight + 1} blocks, their members, and a member-sized array
+ * per thread, into which a block is deflated before it is copied into a {@link Buffer} of the member's size on the same
+ * thread. A file without any byte is written as an empty member so that it is still a valid gzip stream.
+ *
+ * <p>The pool is not shared with other tasks nor with {@code formatting_parallelism}, so they do not wait for each other.
+ * Its threads are stopped on {@link #close}.
+ */
+final class ParallelGzipFileOutput implements FileOutput {
+    ParallelGzipFileOutput(
+            final FileOutput output, final BufferAllocator allocator, final int blockSize, final int threads, final int maxBlocksInFlight) {
+        this.output = output;
+        this.allocator = allocator;
+        this.blockSize = blockSize;
+        this.maxBlocksInFlight = maxBlocksInFlight;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "embulk-formatter-csv-gzip");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.members = ThreadLocal.withInitial(() -> new byte[maxMemberSize(blockSize)]);
+        this.inFlight = new ArrayDeque<>();
+        this.block = new byte[blockSize];
+        this.position = 0;
+        this.membersInFile = 0;
+        this.fileOpen = false;
+    }
+
+    @Override
+    public void nextFile() {
+        if (this.fileOpen) {
+            this.finishFile();
+        }
+        this.output.nextFile();
+        this.membersInFile = 0;
+        this.fileOpen = true;
+    }
+
+    @Override
+    public void add(final Buffer buffer) {
+        try {
+            int index = 0;
+            final int limit = buffer.limit();
+            while (index < limit) {
+                final int length = Math.min(limit - index, this.blockSize - this.position);
+                buffer.getBytes(index, this.block, this.position, length);
+                index += length;
+                this.position += length;
+                if (this.position == this.blockSize) {
+                    this.submitBlock();
+                }
+            }
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Override
+    public void finish() {
+        if (this.fileOpen) {
+            this.finishFile();
+            this.fileOpen = false;
+        }
+        this.output.finish();
+    }
+
+    @Override
+    public void close() {
+        try {
+            // At most maxBlocksInFlight blocks are left after a failure. They are let finish, and their members are released.
+            this.executor.shutdown();
+            try {
+                this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            for (final Future<Buffer> task : this.inFlight) {
+                if (task.isDone()) {
+                    try {
+                        task.get().release();
+                    } catch (final ExecutionException | InterruptedException ex) {
+                        // The block is not written anyway.
+                    }
+                }
+            }
+            this.inFlight.clear();
+        } finally {
+            this.output.close();
+        }
+    }
+
+    // Writes all the blocks of the current file before the underlying output moves to the next file.
+    private void finishFile() {
+        if (this.position > 0 || this.membersInFile + this.inFlight.size() == 0) {
+            this.submitBlock();
+        }
+        while (!this.inFlight.isEmpty()) {
+            this.writeOldest();
+        }
+    }
+
+    private void submitBlock() {
+        final byte[] block = this.block;
+        final int length = this.position;
+        this.block = new byte[this.blockSize];
+        this.position = 0;
+        this.inFlight.addLast(this.executor.submit(() -> this.compress(block, length)));
+        while (this.inFlight.size() > this.maxBlocksInFlight || (!this.inFlight.isEmpty() && this.inFlight.peekFirst().isDone())) {
+            this.writeOldest();
+        }
+    }
+
+    private void writeOldest() {
+        final Buffer member;
+        try {
+            member = this.inFlight.removeFirst().get();
+        } catch (final ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException("Failed to compress a block in gzip.", cause);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while compressing blocks in gzip.", ex);
+        }
+        this.output.add(member);
+        this.membersInFile++;
+    }
+
+    // Deflates block[0, length) into a gzip member in the array of this thread, and copies it into a buffer of its size.
+    private Buffer compress(final byte[] block, final int length) {
+        byte[] member = this.members.get();
+        int memberLength = compress(block, length, member);
+        if (memberLength < 0) {  // Not expected as the array is larger than the bound of deflate.
+            member = new byte[member.length * 2];
+            this.members.set(member);
+            memberLength = compress(block, length, member);
+        }
+        final Buffer buffer = this.allocator.allocate(memberLength);
+        buffer.setBytes(0, member, 0, memberLength);
+        buffer.limit(memberLength);
+        return buffer;
+    }
+
+    // Deflates block[0, length) into a gzip member in "member": the 10-byte header, the raw deflate data, then the CRC-32
+    // and the size. Returns the length of the member, or -1 if it does not fit in "member".
+    static int compress(final byte[] block, final int length, final byte[] member) {
+        final CRC32 crc = new CRC32();
+        crc.update(block, 0, length);
+
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(block, 0, length);
+            deflater.finish();
+            System.arraycopy(HEADER, 0, member, 0, HEADER.length);
+            int memberLength = HEADER.length;
+            while (!deflater.finished()) {
+                if (memberLength == member.length) {
+                    return -1;
+                }
+                memberLength += deflater.deflate(member, memberLength, member.length - memberLength);
+            }
+            if (member.length - memberLength < TRAILER_SIZE) {
+                return -1;
+            }
+            memberLength = putIntLittleEndian(member, memberLength, (int) crc.getValue());
+            return putIntLittleEndian(member, memberLength, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Deflate stores incompressible data in stored blocks of 5 bytes of overhead per up to 64 KiB, far less than this.
+    static int maxMemberSize(final int blockSize) {
+        return blockSize + (blockSize >> 8) + HEADER.length + TRAILER_SIZE + 64;
+    }
+
+    private static int putIntLittleEndian(final byte[] bytes, final int index, final int value) {
+        bytes[index] = (byte) value;
+        bytes[index + 1] = (byte) (value >>> 8);
+        bytes[index + 2] = (byte) (value >>> 16);
+        bytes[index + 3] = (byte) (value >>> 24);
+        return index + 4;
+    }
+
+    // Keeps the threads busy while the caller's thread writes finished members.
+    static final int DEFAULT_BLOCKS_IN_FLIGHT_PER_THREAD = 2;
+
+    // ID1, ID2, CM (deflate), FLG (none), MTIME (none), XFL, OS (unknown).
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private static final int TRAILER_SIZE = 8;
+
+    private final FileOutput output;
+    private final BufferAllocator allocator;
+    private final int blockSize;
+    private final int maxBlocksInFlight;
+    private final ExecutorService executor;
+    private final ThreadLocal<byte[]> members;
+    private final ArrayDeque<Future<Buffer>> inFlight;
+
+    private byte[] block;
+    private int position;
+    private int membersInFile;
+    private boolean fileOpen;
+}
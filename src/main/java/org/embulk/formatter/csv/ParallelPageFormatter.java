@@ -0,0 +1,171 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageReader;
+import org.embulk.util.text.Newline;
+
+/**
+ * Formats records of a {@link Page} in parallel, split into contiguous chunks.
+ *
+ * <p>Each chunk has its own {@link ColumnWriter}s, because they have states. A chunk is encoded into its own segment by
+ * {@link DirectLineOutput#forSegment}, and the segments are moved into the output in the original order. Then, the output
+ * is the same as formatting the records one by one. The first chunk is formatted on the caller's thread, and the others
+ * on the common {@link ForkJoinPool}.
+ *
+ * <p>A {@link PageReader} releases its previous page when a next page is set. Only the counting reader takes the page in
+ * that way. Readers for the chunks are created per page on the caller's thread, and dropped without being closed.
+ *
+ * <p>{@link PageReader} has no method to move to a record at random, and the layout of a page is not a part of the SPI. A
+ * chunk therefore skips the records before its start by {@link PageReader#nextRecord}, which reads only the size and the
+ * null bits of a record. The skipping is O(records &times; chunks) per page, but it runs on each chunk's own thread and
+ * costs a small part of formatting the same records.
+ */
+final class ParallelPageFormatter {
+    ParallelPageFormatter(
+            final int parallelism,
+            final Supplier<PageReader> newPageReader,
+            final Supplier<ColumnWriter[]> newColumnWriters,
+            final Newline newline,
+            final Charset charset,
+            final FormatterMetrics metrics) {
+        this.newPageReader = newPageReader;
+        this.pageReader = newPageReader.get();
+        this.chunks = new Chunk[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            this.chunks[i] = new Chunk(newColumnWriters.get(), DirectLineOutput.forSegment(newline, charset), metrics != null ? metrics.newChunk() : null);
+        }
+        this.tasks = new ForkJoinTask<?>[parallelism];
+        this.metrics = metrics;
+    }
+
+    void add(final Page page, final DirectLineOutput output) {
+        final int recordCount = countRecords(this.pageReader, page);
+        final int chunkCount = Math.max(1, Math.min(this.chunks.length, recordCount / MIN_RECORDS_PER_CHUNK));
+
+        for (int i = 1; i < chunkCount; i++) {
+            final Chunk chunk = this.chunks[i];
+            final PageReader chunkReader = this.newPageReader.get();
+            final int start = (int) ((long) recordCount * i / chunkCount);
+            final int end = (int) ((long) recordCount * (i + 1) / chunkCount);
+            this.tasks[i] = ForkJoinPool.commonPool().submit(() -> chunk.format(chunkReader, page, start, end));
+        }
+
+        Throwable error = null;
+        try {
+            this.chunks[0].format(this.newPageReader.get(), page, 0, (int) ((long) recordCount / chunkCount));
+        } catch (final RuntimeException | Error ex) {
+            error = ex;
+        }
+        // Waits for all the chunks even after an error so that no chunk is running when this method returns.
+        for (int i = 1; i < chunkCount; i++) {
+            try {
+                this.tasks[i].get();
+            } catch (final ExecutionException ex) {
+                if (error == null) {
+                    error = ex.getCause();
+                }
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                if (error == null) {
+                    error = new RuntimeException("Interrupted while formatting records in parallel.", ex);
+                }
+            }
+            this.tasks[i] = null;
+        }
+        if (error != null) {
+            for (final Chunk chunk : this.chunks) {
+                chunk.segment.clear();
+            }
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw new RuntimeException(error);
+        }
+
+        for (int i = 0; i < chunkCount; i++) {
+            this.chunks[i].segment.moveTo(output);
+            if (this.metrics != null) {
+                this.metrics.addChunk(this.chunks[i].metrics);
+            }
+        }
+    }
+
+    private static int countRecords(final PageReader pageReader, final Page page) {
+        pageReader.setPage(page);
+        int count = 0;
+        while (pageReader.nextRecord()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static final class Chunk {
+        Chunk(final ColumnWriter[] columnWriters, final DirectLineOutput segment, final FormatterMetrics metrics) {
+            this.columnWriters = columnWriters;
+            this.segment = segment;
+            this.metrics = metrics;
+            this.line = new StringBuilder();
+        }
+
+        // Formats records [start, end) of the page into the segment.
+        void format(final PageReader pageReader, final Page page, final int start, final int end) {
+            pageReader.setPage(page);
+            for (int i = 0; i < start; i++) {  // No way to move to the start directly. See the class comment.
+                pageReader.nextRecord();
+            }
+            if (this.metrics != null) {
+                for (int i = start; i < end && pageReader.nextRecord(); i++) {
+                    this.line.setLength(0);
+                    this.metrics.writeRecord(pageReader, this.columnWriters, this.line);
+                    this.segment.addLine(this.line);
+                }
+                return;
+            }
+            for (int i = start; i < end && pageReader.nextRecord(); i++) {
+                this.line.setLength(0);
+                for (final ColumnWriter columnWriter : this.columnWriters) {
+                    columnWriter.write(pageReader, this.line);
+                }
+                this.segment.addLine(this.line);
+            }
+        }
+
+        private final ColumnWriter[] columnWriters;
+        private final DirectLineOutput segment;
+        private final FormatterMetrics metrics;
+        private final StringBuilder line;
+    }
+
+    // Smaller chunks are not worth handing over to another thread.
+    private static final int MIN_RECORDS_PER_CHUNK = 256;
+
+    private final Supplier<PageReader> newPageReader;
+    private final PageReader pageReader;
+    private final Chunk[] chunks;
+    private final ForkJoinTask<?>[] tasks;
+    private final FormatterMetrics metrics;
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.embulk.util.text.Newline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes records into one file per value of the partition column, in a single pass.
+ *
+ * <p>{@link org.embulk.spi.FileOutput} writes files one after another, so all the records of the task are buffered per
+ * partition, encoded by {@link DirectLineOutput#forSegment}, until {@link #finish}. No file is written before that. Then,
+ * each partition is written into its own file in the order of their first records, with the header line.
+ *
+ * <p>The partition value and the number of rows of each file are told to {@link FileManifest}, if any, so that the manifest
+ * of each file records its partition.
+ *
+ * <p>Buffers are bounded by the number of partitions in memory and by their total bytes. When either limit is reached,
+ * the largest buffer is spilled into a temporary file of its partition, and dropped. Later records of the partition are
+ * buffered again, and appended to the temporary file at the next spill. So a partition still goes into a single file.
+ */
+final class PartitionedLineOutput implements AutoCloseable {
+    PartitionedLineOutput(
+            final DirectLineOutput output,
+            final Newline newline,
+            final Charset charset,
+            final StringBuilder header,
+            final int maxPartitionsInMemory,
+            final long maxBufferedBytes,
+            final FileManifest manifest) {
+        this.output = output;
+        this.newline = newline;
+        this.charset = charset;
+        this.header = header;
+        this.maxPartitionsInMemory = maxPartitionsInMemory;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.manifest = manifest;
+        this.partitions = new HashMap<>();
+        this.partitionsInOrder = new ArrayList<>();
+        this.lastPartition = null;
+        this.partitionsInMemory = 0;
+        this.bufferedBytes = 0;
+        this.spillDirectory = null;
+    }
+
+    /**
+     * Buffers {@code line} into the partition of its field {@code line[keyStart, keyEnd)}.
+     */
+    void addLine(final StringBuilder line, final int keyStart, final int keyEnd) {
+        Partition partition = this.lastPartition;
+        if (partition == null || !partition.hasKey(line, keyStart, keyEnd)) {
+            final String key = line.substring(keyStart, keyEnd);
+            partition = this.partitions.get(key);
+            if (partition == null) {
+                partition = new Partition(key, this.partitionsInOrder.size());
+                this.partitions.put(key, partition);
+                this.partitionsInOrder.add(partition);
+            }
+            this.lastPartition = partition;
+        }
+
+        if (partition.segment == null) {
+            if (this.partitionsInMemory >= this.maxPartitionsInMemory) {
+                this.spillLargest();
+            }
+            partition.segment = DirectLineOutput.forSegment(this.newline, this.charset);
+            this.partitionsInMemory++;
+        }
+        final long before = partition.segment.getWrittenBytes();
+        partition.segment.addLine(line);
+        partition.rows++;
+        this.bufferedBytes += partition.segment.getWrittenBytes() - before;
+
+        if (this.bufferedBytes > this.maxBufferedBytes) {
+            this.spillLargest();
+        }
+    }
+
+    /**
+     * Writes all the partitions into their files, and finishes the output.
+     */
+    void finish() {
+        if (this.partitionsInOrder.isEmpty()) {
+            // The same as without partitions, a file only with the header line.
+            this.output.nextFile();
+            if (this.header != null) {
+                this.output.addLine(this.header);
+            }
+        }
+        for (final Partition partition : this.partitionsInOrder) {
+            this.output.nextFile();
+            if (this.header != null) {
+                this.output.addLine(this.header);
+            }
+            if (partition.spillFile != null) {
+                this.copySpillFile(partition.spillFile);
+            }
+            if (partition.segment != null) {
+                partition.segment.moveTo(this.output);
+                partition.segment = null;
+            }
+            if (this.manifest != null) {
+                this.manifest.setRows(partition.rows);
+                this.manifest.setPartition(partition.key);
+            }
+            logger.info("Partition {} of {} rows is written into file {} of the task.", partition.key, partition.rows, partition.file);
+        }
+        this.output.finish();
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.output.close();
+        } finally {
+            this.deleteSpillFiles();
+        }
+    }
+
+    private void spillLargest() {
+        Partition largest = null;
+        for (final Partition partition : this.partitionsInOrder) {
+            if (partition.segment != null && (largest == null || partition.segment.getWrittenBytes() > largest.segment.getWrittenBytes())) {
+                largest = partition;
+            }
+        }
+        if (largest == null) {
+            return;
+        }
+
+        final long bytes = largest.segment.getWrittenBytes();
+        try {
+            if (this.spillDirectory == null) {
+                this.spillDirectory = Files.createTempDirectory("embulk-formatter-csv-");
+            }
+            if (largest.spillFile == null) {
+                largest.spillFile = this.spillDirectory.resolve("partition-" + largest.file);
+            }
+            try (final OutputStream out = Files.newOutputStream(largest.spillFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                largest.segment.moveTo(out);
+            }
+        } catch (final IOException ex) {
+            throw new RuntimeException("Failed to spill a partition into a temporary file.", ex);
+        }
+        largest.segment = null;
+        this.partitionsInMemory--;
+        this.bufferedBytes -= bytes;
+        logger.debug("Spilled {} bytes of partition {} into {}.", bytes, largest.key, largest.spillFile);
+    }
+
+    private void copySpillFile(final Path spillFile) {
+        final byte[] bytes = new byte[COPY_BUFFER_SIZE];
+        try (final InputStream in = Files.newInputStream(spillFile)) {
+            int length;
+            while ((length = in.read(bytes)) > 0) {
+                this.output.addEncoded(bytes, length);
+            }
+        } catch (final IOException ex) {
+            throw new RuntimeException("Failed to read a spilled partition from a temporary file: " + spillFile, ex);
+        }
+    }
+
+    private void deleteSpillFiles() {
+        if (this.spillDirectory == null) {
+            return;
+        }
+        try {
+            for (final Partition partition : this.partitionsInOrder) {
+                if (partition.spillFile != null) {
+                    Files.deleteIfExists(partition.spillFile);
+                }
+            }
+            Files.deleteIfExists(this.spillDirectory);
+        } catch (final IOException ex) {
+            logger.warn("Failed to delete temporary files of partitions in {}.", this.spillDirectory, ex);
+        }
+        this.spillDirectory = null;
+    }
+
+    private static final class Partition {
+        Partition(final String key, final int file) {
+            this.key = key;
+            this.file = file;
+            this.segment = null;
+            this.spillFile = null;
+            this.rows = 0;
+        }
+
+        // Compares without creating a String, as records of a partition often come in a row.
+        boolean hasKey(final StringBuilder line, final int start, final int end) {
+            if (end - start != this.key.length()) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                if (line.charAt(i) != this.key.charAt(i - start)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private final String key;
+        private final int file;
+
+        private DirectLineOutput segment;  // null while the partition is not in memory
+        private Path spillFile;
+        private long rows;
+    }
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedLineOutput.class);
+
+    private final DirectLineOutput output;
+    private final Newline newline;
+    private final Charset charset;
+    private final StringBuilder header;
+    private final int maxPartitionsInMemory;
+    private final long maxBufferedBytes;
+    private final FileManifest manifest;
+    private final Map<String, Partition> partitions;
+    private final List<Partition> partitionsInOrder;
+
+    private Partition lastPartition;
+    private int partitionsInMemory;
+    private long bufferedBytes;
+    private Path spillDirectory;
+}
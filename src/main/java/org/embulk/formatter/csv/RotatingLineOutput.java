@@ -0,0 +1,146 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+/**
+ * Starts a next file before a record when the current file has reached {@code max_rows_per_file} or {@code max_bytes_per_file}.
+ *
+ * <p>Files are rotated only at record boundaries, and every file has at least one record. So a file may exceed
+ * {@code max_bytes_per_file} by its last record. The header line, if any, is written at the top of every file, and it is not
+ * counted as a row. A record written in parts by {@link #addPart} begins at its first part. Bytes are counted as encoded by
+ * the line output, before compression by {@link ParallelGzipFileOutput}.
+ *
+ * <p>It also tells record offsets in each file to {@link RowIndex}, if any. Offsets are exact only with
+ * {@link DirectLineOutput}, which counts its buffered bytes. The number of rows of each file is told to {@link RowIndex} and
+ * {@link FileManifest}, if any, before moving to the next file. They write their files when the file output moves to the next
+ * file, after the last bytes of the file are passed.
+ */
+final class RotatingLineOutput extends LineOutput {
+    RotatingLineOutput(final LineOutput output, final long maxRowsPerFile, final long maxBytesPerFile, final StringBuilder header, final RowIndex rowIndex,
+            final FileManifest manifest) {
+        this.output = output;
+        this.maxRowsPerFile = maxRowsPerFile;
+        this.maxBytesPerFile = maxBytesPerFile;
+        this.header = header;
+        this.rowIndex = rowIndex;
+        this.manifest = manifest;
+        this.rows = 0;
+        this.fileStartBytes = 0;
+        this.fileStarted = false;
+        this.inRecord = false;
+    }
+
+    /**
+     * Starts a file, and writes the header line into it.
+     */
+    @Override
+    void nextFile() {
+        this.finishFile();
+        this.output.nextFile();
+        this.rows = 0;
+        this.fileStartBytes = this.output.getWrittenBytes();
+        this.fileStarted = true;
+        if (this.header != null) {
+            this.output.addLine(this.header);
+        }
+    }
+
+    @Override
+    void addLine(final StringBuilder line) {
+        if (!this.inRecord) {
+            this.beginRecord();
+        }
+        this.output.addLine(line);
+        this.rows++;
+        this.inRecord = false;
+    }
+
+    @Override
+    void addLine(final char[] chars, final int length) {
+        if (!this.inRecord) {
+            this.beginRecord();
+        }
+        this.output.addLine(chars, length);
+        this.rows++;
+        this.inRecord = false;
+    }
+
+    @Override
+    void addPart(final StringBuilder part) {
+        if (!this.inRecord) {
+            this.beginRecord();
+            this.inRecord = true;
+        }
+        this.output.addPart(part);
+    }
+
+    @Override
+    void endPage() {
+        this.output.endPage();
+    }
+
+    @Override
+    void finish() {
+        this.finishFile();
+        this.fileStarted = false;
+        this.output.finish();
+    }
+
+    @Override
+    long getWrittenBytes() {
+        return this.output.getWrittenBytes();
+    }
+
+    @Override
+    public void close() {
+        this.output.close();
+    }
+
+    private void beginRecord() {
+        if (this.rows > 0
+                && (this.rows >= this.maxRowsPerFile || this.output.getWrittenBytes() - this.fileStartBytes >= this.maxBytesPerFile)) {
+            this.nextFile();
+        }
+        if (this.rowIndex != null) {
+            this.rowIndex.addRecord(this.rows, this.output.getWrittenBytes() - this.fileStartBytes);
+        }
+    }
+
+    private void finishFile() {
+        if (!this.fileStarted) {
+            return;
+        }
+        if (this.rowIndex != null) {
+            this.rowIndex.setRows(this.rows);
+        }
+        if (this.manifest != null) {
+            this.manifest.setRows(this.rows);
+        }
+    }
+
+    private final LineOutput output;
+    private final long maxRowsPerFile;
+    private final long maxBytesPerFile;
+    private final StringBuilder header;
+    private final RowIndex rowIndex;
+    private final FileManifest manifest;
+
+    private long rows;
+    private long fileStartBytes;
+    private boolean fileStarted;
+    private boolean inRecord;
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.FileOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the byte offset of every {@code interval}-th record of each output file, and writes it into a JSON index file when
+ * the file is finished.
+ *
+ * <p>A record may contain newlines in quoted fields, so a reader cannot find where a record starts from an arbitrary offset.
+ * The offsets in the index are safe points to split the file. An index file looks like below, where {@code offsets[i]} is
+ * the offset of the record {@code i * interval} counted from zero without the header line.
+ *
+ * <pre>{"task":"0f8fad5b-d9cb-469f-a165-70867728950e","file":0,"interval":10000,"rows":25000,"bytes":1843201,"checksum":"5a0c41e3","offsets":[24,737108,1474330]}</pre>
+ *
+ * <p>The formatter does not know the names of files created by the file output plugin, nor the index of its task. So the
+ * index records the identity of its file as the bytes pass to the file output: the size and the CRC32 checksum in hex. A
+ * file is matched to its index by them. An index file is named {@code <path_prefix><task id>.<file number>.index.json},
+ * where the task id is unique per task, and file numbers are in the order of files of the task.
+ *
+ * <p>Offsets are told by {@link RotatingLineOutput} through {@link #addRecord}, and the number of rows through
+ * {@link #setRows} before it moves to a next file. The row index is not available with compression, so bytes passed here are
+ * the bytes of the file as stored.
+ */
+final class RowIndex implements FileOutput {
+    RowIndex(final FileOutput output, final String pathPrefix, final String taskId, final long interval) {
+        this.output = output;
+        this.pathPrefix = pathPrefix;
+        this.taskId = taskId;
+        this.interval = interval;
+        this.checksum = new CRC32();
+        this.bytes = new byte[COPY_SIZE];
+        this.file = -1;
+        this.fileOpen = false;
+        this.offsets = new long[16];
+        this.size = 0;
+        this.rows = 0;
+        this.fileBytes = 0;
+    }
+
+    /**
+     * Records {@code offset} if the record {@code row} of the current file is at the interval.
+     */
+    void addRecord(final long row, final long offset) {
+        if (row % this.interval != 0) {
+            return;
+        }
+        if (this.size == this.offsets.length) {
+            this.offsets = Arrays.copyOf(this.offsets, this.size * 2);
+        }
+        this.offsets[this.size++] = offset;
+    }
+
+    /**
+     * Sets the number of rows of the current file.
+     */
+    void setRows(final long rows) {
+        this.rows = rows;
+    }
+
+    @Override
+    public void nextFile() {
+        this.finishFile();
+        this.output.nextFile();
+        this.file++;
+        this.fileOpen = true;
+        this.size = 0;
+        this.rows = 0;
+        this.fileBytes = 0;
+        this.checksum.reset();
+    }
+
+    @Override
+    public void add(final Buffer buffer) {
+        final int limit = buffer.limit();
+        for (int index = 0; index < limit; index += COPY_SIZE) {
+            final int length = Math.min(limit - index, COPY_SIZE);
+            buffer.getBytes(index, this.bytes, 0, length);
+            this.checksum.update(this.bytes, 0, length);
+        }
+        this.fileBytes += limit;
+        this.output.add(buffer);
+    }
+
+    @Override
+    public void finish() {
+        this.finishFile();
+        this.output.finish();
+    }
+
+    @Override
+    public void close() {
+        this.output.close();
+    }
+
+    /**
+     * Returns the path of the index of the file {@code file} of the task {@code taskId}.
+     */
+    static String pathOf(final String pathPrefix, final String taskId, final int file) {
+        return String.format("%s%s.%03d.index.json", pathPrefix, taskId, file);
+    }
+
+    private void finishFile() {
+        if (!this.fileOpen) {
+            return;
+        }
+        this.fileOpen = false;
+
+        final StringBuilder json = new StringBuilder();
+        json.append("{\"task\":\"").append(this.taskId)
+                .append("\",\"file\":").append(this.file)
+                .append(",\"interval\":").append(this.interval)
+                .append(",\"rows\":").append(this.rows)
+                .append(",\"bytes\":").append(this.fileBytes)
+                .append(",\"checksum\":\"").append(String.format("%08x", this.checksum.getValue()))
+                .append("\",\"offsets\":[");
+        for (int i = 0; i < this.size; i++) {
+            if (i != 0) {
+                json.append(',');
+            }
+            json.append(this.offsets[i]);
+        }
+        json.append("]}\n");
+
+        final Path path = Paths.get(pathOf(this.pathPrefix, this.taskId, this.file));
+        try {
+            Files.write(path, json.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (final IOException ex) {
+            throw new RuntimeException("Failed to write a row index file: " + path, ex);
+        }
+        logger.info("Wrote a row index of {} rows in {} bytes to {}.", this.rows, this.fileBytes, path);
+    }
+
+    // Bytes of a buffer are checksummed through an array of this size.
+    private static final int COPY_SIZE = 64 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(RowIndex.class);
+
+    private final FileOutput output;
+    private final String pathPrefix;
+    private final String taskId;
+    private final long interval;
+    private final CRC32 checksum;
+    private final byte[] bytes;
+
+    private int file;
+    private boolean fileOpen;
+    private long[] offsets;
+    private int size;
+    private long rows;
+    private long fileBytes;
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+/**
+ * Caches escaped, and quoted if required, string values of a low-cardinality column.
+ *
+ * <p>It is a direct-mapped cache keyed by the value. A value which is not cached replaces the value in its slot. A cached
+ * value is appended to the line as a whole without scanning its characters again. Its hit rate is checked every
+ * {@link #CHECK_INTERVAL} lookups, and the cache disables itself for the rest of the task if the rate is lower than a half.
+ */
+final class StringValueCache {
+    StringValueCache(final FieldEscaper escaper) {
+        this.escaper = escaper;
+        this.keys = new String[CACHE_SIZE];
+        this.values = new String[CACHE_SIZE];
+        this.enabled = true;
+        this.hits = 0;
+        this.misses = 0;
+        this.lookups = 0;
+        this.lookupHits = 0;
+    }
+
+    void appendTo(final StringBuilder line, final String value) {
+        if (!this.enabled) {
+            this.escaper.appendTo(line, value);
+            return;
+        }
+
+        final int slot = value.hashCode() & (CACHE_SIZE - 1);
+        final String key = this.keys[slot];
+        if (key == value || value.equals(key)) {
+            this.hits++;
+            this.lookupHits++;
+            line.append(this.values[slot]);
+        } else {
+            this.misses++;
+            final int start = line.length();
+            this.escaper.appendTo(line, value);
+            this.keys[slot] = value;
+            this.values[slot] = line.substring(start);
+        }
+
+        if (++this.lookups == CHECK_INTERVAL) {
+            if (this.lookupHits * 2 < CHECK_INTERVAL) {
+                this.disable();
+            }
+            this.lookups = 0;
+            this.lookupHits = 0;
+        }
+    }
+
+    boolean isEnabled() {
+        return this.enabled;
+    }
+
+    long getHits() {
+        return this.hits;
+    }
+
+    long getMisses() {
+        return this.misses;
+    }
+
+    private void disable() {
+        this.enabled = false;
+        this.keys = null;
+        this.values = null;
+    }
+
+    static final int CHECK_INTERVAL = 4096;
+
+    private static final int CACHE_SIZE = 256;  // Must be a power of 2.
+
+    private final FieldEscaper escaper;
+
+    private String[] keys;
+    private String[] values;
+    private boolean enabled;
+    private long hits;
+    private long misses;
+    private int lookups;
+    private int lookupHits;
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import org.embulk.util.timestamp.TimestampFormatter;
+
+/**
+ * Formats timestamps of a column, with a small cache keyed by epoch second.
+ *
+ * <p>Common patterns with a fixed zone offset are formatted by {@link FastTimestampFormatter} without the cache.
+ *
+ * <p>Otherwise, a Ruby-style pattern is split around its only fractional-second directive ({@code %N}, {@code %1N}..{@code %9N},
+ * or {@code %L}). The parts before and after it depend only on the epoch second, then they are formatted by the general
+ * {@link TimestampFormatter} only when the epoch second is not in the cache. The fractional digits are written per row.
+ *
+ * <p>The formatters compiled from a pattern and a zone are immutable, and shared by all the tasks in the JVM through a
+ * process-wide cache. Only the cache of formatted epoch seconds, and the counters, belong to each instance.
+ */
+final class TimestampColumnFormatter {
+    private TimestampColumnFormatter(final Compiled compiled, final FieldEscaper escaper) {
+        this.fastFormatter = compiled.fastFormatter;
+        this.fastPlain = compiled.fastFormatter != null && escaper.isPlain(compiled.fastFormatter.getAlphabet());
+        this.formatter = compiled.formatter;
+        this.headFormatter = compiled.headFormatter;
+        this.tailFormatter = compiled.tailFormatter;
+        this.fractionDigits = compiled.fractionDigits;
+        this.escaper = escaper;
+        this.cacheable = compiled.cacheable;
+
+        this.keys = new long[CACHE_SIZE];
+        this.heads = new String[CACHE_SIZE];
+        this.tails = new String[CACHE_SIZE];
+        this.plains = new boolean[CACHE_SIZE];
+        Arrays.fill(this.keys, EMPTY_KEY);
+        this.hits = 0;
+        this.misses = 0;
+        this.fastFormats = 0;
+    }
+
+    static TimestampColumnFormatter of(final String pattern, final String zoneIdString, final FieldEscaper escaper) {
+        final List<String> key = Arrays.asList(pattern, zoneIdString);
+        Compiled compiled = COMPILED.get(key);
+        if (compiled == null) {
+            compiled = compile(pattern, zoneIdString);  // Compiled out of the map's lock. A race only compiles it twice.
+            if (COMPILED.size() < MAX_COMPILED) {
+                COMPILED.putIfAbsent(key, compiled);
+            }
+        }
+        return new TimestampColumnFormatter(compiled, escaper);
+    }
+
+    private static Compiled compile(final String pattern, final String zoneIdString) {
+        final TimestampFormatter formatter = build(pattern, zoneIdString);
+        final FastTimestampFormatter fastFormatter = FastTimestampFormatter.compile(pattern, zoneIdString);
+        final int[] fraction = findFraction(pattern);
+        if (fraction == null) {
+            return new Compiled(fastFormatter, formatter, null, null, 0, false);
+        }
+        if (fraction.length == 0) {  // No fractional-second directive.
+            return new Compiled(fastFormatter, formatter, formatter, null, 0, true);
+        }
+        final String head = pattern.substring(0, fraction[0]);
+        final String tail = pattern.substring(fraction[1]);
+        return new Compiled(
+                fastFormatter,
+                formatter,
+                head.isEmpty() ? null : build(head, zoneIdString),
+                tail.isEmpty() ? null : build(tail, zoneIdString),
+                fraction[2],
+                true);
+    }
+
+    void appendTo(final StringBuilder line, final Instant instant) {
+        if (this.fastFormatter != null && this.appendFast(line, instant)) {
+            this.fastFormats++;
+            return;
+        }
+        if (!this.cacheable) {
+            this.escaper.appendTo(line, this.formatter.format(instant));
+            return;
+        }
+
+        final long epochSecond = instant.getEpochSecond();
+        final int slot = (int) (epochSecond ^ (epochSecond >>> 32)) & (CACHE_SIZE - 1);
+        if (this.keys[slot] == epochSecond) {
+            this.hits++;
+        } else {
+            this.misses++;
+            this.fill(slot, epochSecond);
+        }
+
+        if (this.plains[slot]) {
+            this.escaper.appendPlainQuote(line);
+            line.append(this.heads[slot]);
+            appendFraction(line, instant.getNano(), this.fractionDigits);
+            line.append(this.tails[slot]);
+            this.escaper.appendPlainQuote(line);
+        } else {
+            final StringBuilder value = new StringBuilder();
+            value.append(this.heads[slot]);
+            appendFraction(value, instant.getNano(), this.fractionDigits);
+            value.append(this.tails[slot]);
+            this.escaper.appendTo(line, value.toString());
+        }
+    }
+
+    long getHits() {
+        return this.hits;
+    }
+
+    long getMisses() {
+        return this.misses;
+    }
+
+    // The number of timestamps formatted by the fast formatter, which are counted neither as hits nor as misses.
+    long getFastFormats() {
+        return this.fastFormats;
+    }
+
+    // Returns false if the fast formatter declines the instant.
+    private boolean appendFast(final StringBuilder line, final Instant instant) {
+        if (this.fastPlain) {
+            final int mark = line.length();
+            this.escaper.appendPlainQuote(line);
+            if (!this.fastFormatter.appendTo(line, instant)) {
+                line.setLength(mark);
+                return false;
+            }
+            this.escaper.appendPlainQuote(line);
+            return true;
+        }
+        final StringBuilder value = new StringBuilder();
+        if (!this.fastFormatter.appendTo(value, instant)) {
+            return false;
+        }
+        this.escaper.appendTo(line, value.toString());
+        return true;
+    }
+
+    private void fill(final int slot, final long epochSecond) {
+        final Instant second = Instant.ofEpochSecond(epochSecond);
+        final String head = this.headFormatter != null ? this.headFormatter.format(second) : "";
+        final String tail = this.tailFormatter != null ? this.tailFormatter.format(second) : "";
+        this.keys[slot] = epochSecond;
+        this.heads[slot] = head;
+        this.tails[slot] = tail;
+        this.plains[slot] = this.escaper.isPlain(head + tail + (this.fractionDigits > 0 ? "0123456789" : ""));
+    }
+
+    private static void appendFraction(final StringBuilder line, final int nano, final int digits) {
+        int divisor = 100000000;
+        for (int i = 0; i < digits; i++) {
+            line.append((char) ('0' + (nano / divisor) % 10));
+            divisor /= 10;
+        }
+    }
+
+    /**
+     * Finds the only fractional-second directive in a Ruby-style pattern.
+     *
+     * @return {@code {start, end, digits}} of the directive, an empty array if the pattern has no fractional-second
+     *     directive, or {@code null} if the pattern cannot be split safely
+     */
+    static int[] findFraction(final String pattern) {
+        if (pattern.startsWith("java:") || pattern.startsWith("ruby:")) {
+            return null;
+        }
+
+        int[] found = new int[0];
+        int i = 0;
+        while (i < pattern.length()) {
+            if (pattern.charAt(i) != '%') {
+                i++;
+                continue;
+            }
+            int j = i + 1;
+            while (j < pattern.length() && FLAGS.indexOf(pattern.charAt(j)) >= 0) {
+                j++;
+            }
+            final int widthStart = j;
+            while (j < pattern.length() && pattern.charAt(j) >= '0' && pattern.charAt(j) <= '9') {
+                j++;
+            }
+            final int widthEnd = j;
+            while (j < pattern.length() && pattern.charAt(j) == ':') {
+                j++;
+            }
+            if (j >= pattern.length()) {
+                return null;
+            }
+
+            final char conversion = pattern.charAt(j);
+            if (conversion == 'N' || conversion == 'L') {
+                if (found.length != 0 || widthStart != i + 1 || widthEnd != j) {
+                    return null;  // Multiple fractions, or flags or colons on the fraction.
+                }
+                final int digits;
+                if (conversion == 'L') {
+                    if (widthStart != widthEnd) {
+                        return null;
+                    }
+                    digits = 3;
+                } else if (widthStart == widthEnd) {
+                    digits = 9;
+                } else {
+                    digits = Integer.parseInt(pattern.substring(widthStart, widthEnd));
+                    if (digits < 1 || digits > 9) {
+                        return null;
+                    }
+                }
+                found = new int[] { i, j + 1, digits };
+            } else if (SECOND_RESOLUTION_CONVERSIONS.indexOf(conversion) < 0) {
+                return null;
+            }
+            i = j + 1;
+        }
+        return found;
+    }
+
+    private static TimestampFormatter build(final String pattern, final String zoneIdString) {
+        return TimestampFormatter.builder(pattern, true).setDefaultZoneFromString(zoneIdString).build();
+    }
+
+    // The formatters of a pattern and a zone, which are immutable and thread-safe.
+    private static final class Compiled {
+        Compiled(
+                final FastTimestampFormatter fastFormatter,
+                final TimestampFormatter formatter,
+                final TimestampFormatter headFormatter,
+                final TimestampFormatter tailFormatter,
+                final int fractionDigits,
+                final boolean cacheable) {
+            this.fastFormatter = fastFormatter;
+            this.formatter = formatter;
+            this.headFormatter = headFormatter;
+            this.tailFormatter = tailFormatter;
+            this.fractionDigits = fractionDigits;
+            this.cacheable = cacheable;
+        }
+
+        private final FastTimestampFormatter fastFormatter;
+        private final TimestampFormatter formatter;
+        private final TimestampFormatter headFormatter;
+        private final TimestampFormatter tailFormatter;
+        private final int fractionDigits;
+        private final boolean cacheable;
+    }
+
+    private static final int CACHE_SIZE = 64;  // Must be a power of 2.
+
+    // Patterns and zones come from configurations, so they are few. The limit is only against unexpected growth.
+    private static final int MAX_COMPILED = 1024;
+
+    private static final ConcurrentHashMap<List<String>, Compiled> COMPILED = new ConcurrentHashMap<>();
+
+    private static final long EMPTY_KEY = Long.MIN_VALUE;  // Out of the range of Instant's epoch second.
+
+    private static final String FLAGS = "-_0^#";
+
+    // Conversions whose results are determined only by the epoch second, and the zone.
+    private static final String SECOND_RESOLUTION_CONVERSIONS = "AaBbCcDdeFGgHhIjklMmnPpRrSsTtUuVvWwXxYyZz+%";
+
+    private final FastTimestampFormatter fastFormatter;
+    private final boolean fastPlain;
+    private final TimestampFormatter formatter;
+    private final TimestampFormatter headFormatter;
+    private final TimestampFormatter tailFormatter;
+    private final int fractionDigits;
+    private final FieldEscaper escaper;
+    private final boolean cacheable;
+
+    private final long[] keys;
+    private final String[] heads;
+    private final String[] tails;
+    private final boolean[] plains;
+
+    private long hits;
+    private long misses;
+    private long fastFormats;
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.embulk.config.ConfigSource;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.Column;
+import org.embulk.spi.Exec;
+import org.embulk.spi.FileOutput;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.Schema;
+import org.embulk.spi.json.JsonValue;
+
+/**
+ * Runs the plugin over pages built from rows, and collects the files written, for tests. They must be called in an Embulk
+ * session, such as with {@code EmbulkTestRuntime}.
+ */
+final class CsvFormatterTesting {
+    private CsvFormatterTesting() {
+        // No instances.
+    }
+
+    /**
+     * Runs the plugin over pages of {@code rows}, and returns the only file written in UTF-8.
+     */
+    static String format(final ConfigSource config, final Schema schema, final Object[][] rows) {
+        final CollectingFileOutput fileOutput = run(config, schema, rows);
+        assertEquals(1, fileOutput.files.size());
+        return new String(fileOutput.files.get(0).toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Runs the plugin over pages of {@code rows}, and returns the files written.
+     */
+    static CollectingFileOutput run(final ConfigSource config, final Schema schema, final Object[][] rows) {
+        final CsvFormatterPlugin plugin = new CsvFormatterPlugin();
+        final CollectingFileOutput fileOutput = new CollectingFileOutput();
+        plugin.transaction(config, schema, taskSource -> {
+            // Pages are built for each run, as a page is released by the reader which has read it.
+            final List<Page> pages = buildPages(schema, rows);
+            try (final PageOutput output = plugin.open(taskSource, schema, fileOutput)) {
+                for (final Page page : pages) {
+                    output.add(page);
+                }
+                output.finish();
+            }
+        });
+        return fileOutput;
+    }
+
+    /**
+     * Builds pages of {@code rows} in the way of BenchmarkData#pages. It must be called in an Embulk session.
+     */
+    static List<Page> buildPages(final Schema schema, final Object[][] rows) {
+        final List<Page> pages = new ArrayList<>();
+        final PageOutput collecting = new PageOutput() {
+                @Override
+                public void add(final Page page) {
+                    pages.add(page);
+                }
+
+                @Override
+                public void finish() {
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        try (final PageBuilder builder = Exec.getPageBuilder(Exec.getBufferAllocator(), schema, collecting)) {
+            for (final Object[] row : rows) {
+                for (final Column column : schema.getColumns()) {
+                    final Object value = row[column.getIndex()];
+                    if (value == null) {
+                        builder.setNull(column);
+                    } else if (value instanceof Boolean) {
+                        builder.setBoolean(column, (Boolean) value);
+                    } else if (value instanceof Long) {
+                        builder.setLong(column, (Long) value);
+                    } else if (value instanceof Double) {
+                        builder.setDouble(column, (Double) value);
+                    } else if (value instanceof String) {
+                        builder.setString(column, (String) value);
+                    } else if (value instanceof Instant) {
+                        builder.setTimestamp(column, (Instant) value);
+                    } else {
+                        builder.setJson(column, (JsonValue) value);
+                    }
+                }
+                builder.addRecord();
+            }
+            builder.finish();
+        }
+        return pages;
+    }
+
+    /**
+     * Collects bytes of each file, and releases the buffers.
+     */
+    static class CollectingFileOutput implements FileOutput {
+        @Override
+        public void nextFile() {
+            this.files.add(new ByteArrayOutputStream());
+        }
+
+        @Override
+        public void add(final Buffer buffer) {
+            final byte[] bytes = new byte[buffer.limit()];
+            buffer.getBytes(0, bytes, 0, bytes.length);
+            this.files.get(this.files.size() - 1).write(bytes, 0, bytes.length);
+            buffer.release();
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        final List<ByteArrayOutputStream> files = new ArrayList<>();
+    }
+}
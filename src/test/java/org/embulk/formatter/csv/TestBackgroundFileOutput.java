@@ -0,0 +1,107 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.Exec;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.util.text.Newline;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestBackgroundFileOutput {
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void testSameOutputInOrder() {
+        final StringBuilder expected0 = new StringBuilder();
+        final StringBuilder expected1 = new StringBuilder();
+        final CountingFileOutput collecting = new CountingFileOutput();
+        final BackgroundFileOutput background = new BackgroundFileOutput(collecting, 2);
+        final LineOutput lineOutput = LineOutput.of(background, Newline.LF, StandardCharsets.UTF_8, Exec.getBufferAllocator());
+        final StringBuilder line = new StringBuilder();
+
+        lineOutput.nextFile();
+        for (int i = 0; i < 20000; i++) {
+            line.setLength(0);
+            line.append(i).append(",あいう,").append(i * 31);
+            lineOutput.addLine(line);
+            expected0.append(line).append('\n');
+        }
+        lineOutput.nextFile();
+        for (int i = 0; i < 100; i++) {
+            line.setLength(0);
+            line.append("second,").append(i);
+            lineOutput.addLine(line);
+            expected1.append(line).append('\n');
+        }
+        lineOutput.finish();
+        assertEquals(1, collecting.finished);
+        lineOutput.close();
+        background.close();
+
+        assertEquals(1, collecting.closed);
+        assertEquals(2, collecting.files.size());
+        assertEquals(expected0.toString(), new String(collecting.files.get(0).toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(expected1.toString(), new String(collecting.files.get(1).toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testErrorPropagatedToFinish() {
+        final RuntimeException error = new RuntimeException("write failed");
+        final CountingFileOutput failing = new CountingFileOutput() {
+            @Override
+            public void add(final Buffer buffer) {
+                buffer.release();
+                throw error;
+            }
+        };
+        final BackgroundFileOutput background = new BackgroundFileOutput(failing, 2);
+        background.nextFile();
+        background.add(Exec.getBufferAllocator().allocate());
+        try {
+            background.finish();
+            fail("The error on the writer thread is expected to be rethrown.");
+        } catch (final RuntimeException ex) {
+            assertSame(error, ex);
+        }
+        assertEquals(0, failing.finished);
+        background.close();
+        assertEquals(1, failing.closed);
+    }
+
+    private static class CountingFileOutput extends CsvFormatterTesting.CollectingFileOutput {
+        @Override
+        public void finish() {
+            this.finished++;
+        }
+
+        @Override
+        public void close() {
+            this.closed++;
+        }
+
+        int finished;
+        int closed;
+    }
+}
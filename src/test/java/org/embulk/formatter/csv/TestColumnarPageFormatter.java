@@ -0,0 +1,111 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import org.embulk.config.ConfigSource;
+import org.embulk.spi.Exec;
+import org.embulk.spi.Page;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.embulk.util.text.Newline;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestColumnarPageFormatter {
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void testSameAsRowLoop() {
+        final Object[][] rows = rows(3000);
+        assertEquals(CsvFormatterTesting.format(config(false), SCHEMA, rows), CsvFormatterTesting.format(config(true), SCHEMA, rows));
+    }
+
+    @Test
+    public void testSameAsRowLoopWithRotationAndEncoder() {
+        // ISO-2022-JP is encoded by LineEncoder, not by DirectLineOutput.
+        final Object[][] rows = rows(3000);
+        final CsvFormatterTesting.CollectingFileOutput expected =
+                CsvFormatterTesting.run(config(false).set("max_rows_per_file", 1000).set("charset", "ISO-2022-JP"), SCHEMA, rows);
+        final CsvFormatterTesting.CollectingFileOutput actual =
+                CsvFormatterTesting.run(config(true).set("max_rows_per_file", 1000).set("charset", "ISO-2022-JP"), SCHEMA, rows);
+        assertEquals(3, actual.files.size());
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(expected.files.get(i).toByteArray(), actual.files.get(i).toByteArray());
+        }
+    }
+
+    @Test
+    public void testFieldsInterleavedIntoLines() {
+        // The second field is longer than the initial line of 128 characters.
+        final Schema schema = Schema.builder().add("id", Types.LONG).add("s", Types.STRING).add("b", Types.BOOLEAN).build();
+        final StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            longValue.append("a,b");
+        }
+        final Object[][] rows = { { 1L, "x", true }, { null, longValue.toString(), null }, { 3L, null, false } };
+        final FieldEscaper escaper = new FieldEscaper(',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', '"', "\n", "");
+        final ColumnarPageFormatter formatter = new ColumnarPageFormatter(
+                () -> Exec.getPageReader(schema),
+                ColumnWriter.compile(schema.getColumns(), ',', escaper, "", null, null, new StringValueCache[3]));
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        try (final DirectLineOutput output = new DirectLineOutput(fileOutput, Newline.LF, StandardCharsets.UTF_8, Exec.getBufferAllocator())) {
+            output.nextFile();
+            for (final Page page : CsvFormatterTesting.buildPages(schema, rows)) {
+                formatter.add(page, output);
+            }
+            output.finish();
+        }
+        assertEquals("1,x,true\n,\"" + longValue + "\",\n3,,false\n", new String(fileOutput.files.get(0).toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static ConfigSource config(final boolean columnar) {
+        return CONFIG_MAPPER_FACTORY.newConfigSource().set("columnar_formatting", columnar);
+    }
+
+    // Values of every type with nulls, specials and non-ASCII characters, over some pages.
+    private static Object[][] rows(final int count) {
+        final Object[][] rows = new Object[count][];
+        for (int i = 0; i < count; i++) {
+            rows[i] = new Object[] {
+                i % 11 == 0 ? null : (long) i * 7919,
+                i % 5 == 0 ? "a,\"b\"\r\nあ" + i : "abc" + i,
+                i % 13 == 0 ? null : Instant.ofEpochSecond(1700000000L + i, i * 1000),
+                i % 3 == 0 ? null : i / 7.0,
+                i % 2 == 0,
+            };
+        }
+        return rows;
+    }
+
+    private static final Schema SCHEMA = Schema.builder()
+            .add("id", Types.LONG)
+            .add("s", Types.STRING)
+            .add("t", Types.TIMESTAMP)
+            .add("d", Types.DOUBLE)
+            .add("b", Types.BOOLEAN)
+            .build();
+
+    private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY = ConfigMapperFactory.builder().addDefaultModules().build();
+}
@@ -23,7 +23,17 @@ import com.google.common.collect.ImmutableMap;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.charset.Charset;
+import java.time.Instant;
+import java.util.List;
+import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigSource;
+import org.embulk.spi.Column;
+import org.embulk.spi.Schema;
+import org.embulk.spi.json.JsonArray;
+import org.embulk.spi.json.JsonLong;
+import org.embulk.spi.json.JsonObject;
+import org.embulk.spi.json.JsonString;
+import org.embulk.spi.type.Types;
 import org.embulk.test.EmbulkTestRuntime;
 import org.embulk.util.config.ConfigMapper;
 import org.embulk.util.config.ConfigMapperFactory;
@@ -51,6 +61,7 @@ public class TestCsvFormatterPlugin {
         assertEquals("UTC", task.getDefaultTimeZoneId());
         assertEquals("%Y-%m-%d %H:%M:%S.%6N %z", task.getDefaultTimestampFormat());
         assertEquals(Newline.LF, task.getNewlineInField());
+        assertEquals(false, task.getColumns().isPresent());
     }
 
     @Test
@@ -315,6 +326,148 @@ public class TestCsvFormatterPlugin {
         assertEquals("N/A", method.invoke(formatter, "N/A", delimiter, CsvFormatterPlugin.QuotePolicy.NONE, quote, escape, newline, "N/A"));
     }
 
+    @Test
+    public void testFieldEscaperAppendsIntoSharedBuffer() {
+        final String newline = Newline.LF.getString();
+        final FieldEscaper minimal = new FieldEscaper(',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', '"', newline, "");
+        final FieldEscaper none = new FieldEscaper(',', CsvFormatterPlugin.QuotePolicy.NONE, '"', '\\', newline, "");
+
+        final StringBuilder buffer = new StringBuilder();
+        minimal.appendTo(buffer, "ABC");
+        buffer.append(',');
+        minimal.appendTo(buffer, "A,B\"C\r\nD\rE");
+        buffer.append(',');
+        minimal.appendTo(buffer, "");
+        assertEquals("ABC,\"A,B\"\"C\nD\nE\",\"\"", buffer.toString());
+
+        buffer.setLength(0);
+        none.appendTo(buffer, "A,B\"C\r\nD");
+        assertEquals("A\\,B\"C\\\nD", buffer.toString());
+    }
+
+    @Test
+    public void testHeaderOfColumns()
+            throws NoSuchMethodException, SecurityException, IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+        Method method = CsvFormatterPlugin.class.getDeclaredMethod("newHeader", List.class, char.class,
+                CsvFormatterPlugin.QuotePolicy.class, char.class, char.class, String.class, String.class);
+        method.setAccessible(true);
+        CsvFormatterPlugin formatter = new CsvFormatterPlugin();
+
+        final Schema schema = Schema.builder().add("a", Types.STRING).add("b,c", Types.LONG).add("d", Types.DOUBLE).build();
+        final List<Column> columns = ImmutableList.of(schema.lookupColumn("d"), schema.lookupColumn("b,c"));
+        final StringBuilder header = (StringBuilder) method.invoke(
+                formatter, columns, ',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', '"', Newline.LF.getString(), "");
+        assertEquals("d,\"b,c\"", header.toString());
+    }
+
+    @Test
+    public void testFormatAllTypes() {
+        final ConfigSource config = CONFIG_MAPPER_FACTORY.newConfigSource().set("newline", "LF");
+        assertEquals("b,l,d,\"s,x\",t,j\n"
+                     + "true,123,3.5,abc,2015-01-27 19:23:49.123456 +0000,\"{\"\"k\"\":\"\"v\"\"}\"\n"
+                     + "false,-9223372036854775808,1.0E-5,\"a,b\"\"c\nd\",1970-01-01 00:00:00.000000 +0000,\"[1,\"\"x\"\"]\"\n"
+                     + ",,,,,\n",
+                     CsvFormatterTesting.format(config, ALL_TYPES_SCHEMA, ALL_TYPES_ROWS));
+    }
+
+    @Test
+    public void testFormatQuoteAllWithoutHeader() {
+        final ConfigSource config = CONFIG_MAPPER_FACTORY.newConfigSource()
+                .set("header_line", false)
+                .set("quote_policy", "ALL")
+                .set("null_string", "\\N");
+        assertEquals("\"true\",\"123\",\"3.5\",\"abc\",\"2015-01-27 19:23:49.123456 +0000\",\"{\"\"k\"\":\"\"v\"\"}\"\r\n"
+                     + "\"false\",\"-9223372036854775808\",\"1.0E-5\",\"a,b\"\"c\nd\",\"1970-01-01 00:00:00.000000 +0000\",\"[1,\"\"x\"\"]\"\r\n"
+                     + "\\N,\\N,\\N,\\N,\\N,\\N\r\n",
+                     CsvFormatterTesting.format(config, ALL_TYPES_SCHEMA, ALL_TYPES_ROWS));
+    }
+
+    @Test
+    public void testFormatSelectedColumns() {
+        final ConfigSource config = CONFIG_MAPPER_FACTORY.newConfigSource()
+                .set("newline", "LF")
+                .set("null_string", "NULL")
+                .set("columns", ImmutableList.of("t", "s,x", "l"));
+        final Object[][] rows = {
+            { true, 123L, 3.5, "abc", Instant.ofEpochSecond(1422386629, 123456789), null },
+            { false, -1L, 0.0, "NULL", Instant.ofEpochSecond(0), null },
+            { null, null, null, null, null, null },
+        };
+        // A value equal to the null string is quoted, and the header has only the selected columns in their order.
+        assertEquals("t,\"s,x\",l\n"
+                     + "2015-01-27 19:23:49.123456 +0000,abc,123\n"
+                     + "1970-01-01 00:00:00.000000 +0000,\"NULL\",-1\n"
+                     + "NULL,NULL,NULL\n",
+                     CsvFormatterTesting.format(config, ALL_TYPES_SCHEMA, rows));
+    }
+
+    @Test
+    public void testFormatAcrossPages() {
+        final ConfigSource config = CONFIG_MAPPER_FACTORY.newConfigSource().set("newline", "LF").set("header_line", false);
+        final Schema schema = Schema.builder().add("id", Types.LONG).add("s", Types.STRING).build();
+        final Object[][] rows = new Object[5000][];
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[] { (long) i, "value \"" + i + "\" of a record which is long enough to fill pages" };
+            expected.append(i).append(",\"value \"\"").append(i).append("\"\" of a record which is long enough to fill pages\"\n");
+        }
+        assertEquals(expected.toString(), CsvFormatterTesting.format(config, schema, rows));
+    }
+
+    @Test
+    public void testFormatMinimumOutputBuffers() {
+        final ConfigSource config = CONFIG_MAPPER_FACTORY.newConfigSource()
+                .set("newline", "LF")
+                .set("header_line", false)
+                .set("output_buffer_size", DirectLineOutput.MIN_BUFFER_SIZE)
+                .set("flush_threshold", 1);
+        final Schema schema = Schema.builder().add("id", Types.LONG).add("s", Types.STRING).build();
+        final Object[][] rows = new Object[3000][];
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[] { (long) i, "値" + i + "😀" };
+            expected.append(i).append(",値").append(i).append("😀\n");
+        }
+        assertEquals(expected.toString(), CsvFormatterTesting.format(config, schema, rows));
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testOutputBufferSizeTooSmall() {
+        // A buffer smaller than the bytes of a character or a newline would never have room for them.
+        final ConfigSource config = CONFIG_MAPPER_FACTORY.newConfigSource().set("output_buffer_size", 2);
+        CsvFormatterTesting.format(config, ALL_TYPES_SCHEMA, ALL_TYPES_ROWS);
+    }
+
+    @Test
+    public void testFieldEscaperIsPlain() {
+        final String newline = Newline.LF.getString();
+        final String digits = "-0123456789";
+
+        assertEquals(true, new FieldEscaper(',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', '"', newline, "").isPlain(digits));
+        assertEquals(true, new FieldEscaper(',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', '"', newline, "N/A").isPlain(digits));
+        assertEquals(false, new FieldEscaper('-', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', '"', newline, "").isPlain(digits));
+        assertEquals(false, new FieldEscaper(',', CsvFormatterPlugin.QuotePolicy.ALL, '0', '"', newline, "").isPlain(digits));
+        assertEquals(true, new FieldEscaper(',', CsvFormatterPlugin.QuotePolicy.NONE, '0', '"', newline, "").isPlain(digits));
+        // A value which equals to the null string must be quoted in MINIMAL.
+        assertEquals(false, new FieldEscaper(',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', '"', newline, "-1").isPlain(digits));
+        assertEquals(true, new FieldEscaper(',', CsvFormatterPlugin.QuotePolicy.ALL, '"', '"', newline, "-1").isPlain(digits));
+    }
+
+    private static final Schema ALL_TYPES_SCHEMA = Schema.builder()
+            .add("b", Types.BOOLEAN)
+            .add("l", Types.LONG)
+            .add("d", Types.DOUBLE)
+            .add("s,x", Types.STRING)
+            .add("t", Types.TIMESTAMP)
+            .add("j", Types.JSON)
+            .build();
+
+    private static final Object[][] ALL_TYPES_ROWS = {
+        { true, 123L, 3.5, "abc", Instant.ofEpochSecond(1422386629, 123456789), JsonObject.ofEntries(JsonObject.entry("k", JsonString.of("v"))) },
+        { false, Long.MIN_VALUE, 1.0E-5, "a,b\"c\r\nd", Instant.ofEpochSecond(0), JsonArray.of(JsonLong.of(1), JsonString.of("x")) },
+        { null, null, null, null, null, null },
+    };
+
     private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY = ConfigMapperFactory.builder().addDefaultModules().build();
 
     private static final ConfigMapper CONFIG_MAPPER = CONFIG_MAPPER_FACTORY.createConfigMapper();
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import org.embulk.spi.Exec;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.util.text.Newline;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestDirectLineOutput {
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void testUtf8() {
+        assertEncodedAsString(StandardCharsets.UTF_8, Newline.CRLF, "abc,\"def\"", "あいう,é", "😀", "");
+    }
+
+    @Test
+    public void testUtf8MalformedSurrogates() {
+        assertEncodedAsString(StandardCharsets.UTF_8, Newline.LF, "a\ud800b", "\udc00", "x\ud83d");  // Lone surrogates
+    }
+
+    @Test
+    public void testAsciiUnmappable() {
+        assertEncodedAsString(StandardCharsets.US_ASCII, Newline.CR, "abc", "あbé", "😀", "a\ud800b");  // Including a lone surrogate
+    }
+
+    @Test
+    public void testCharsetTables() {
+        for (final String name : new String[] { "ISO-8859-1", "windows-1252", "Shift_JIS", "windows-31j", "EUC-JP" }) {
+            assertEncodedAsString(Charset.forName(name), Newline.CRLF, "abc,\"def\"", "あいう,é€ｱ", "😀", "a\ud800b", "\udc00", "");
+        }
+    }
+
+    @Test
+    public void testCharsetTableAcrossBuffers() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            builder.append((char) ('a' + (i % 26)));
+            if (i % 7 == 0) {
+                builder.append("あ😀");
+            }
+        }
+        assertEncodedAsString(Charset.forName("EUC-JP"), Newline.CRLF, builder.toString(), builder.toString());
+    }
+
+    @Test
+    public void testNoCharsetTable() {
+        assertFalse(DirectLineOutput.isSupported(StandardCharsets.UTF_16));
+        assertFalse(DirectLineOutput.isSupported(Charset.forName("ISO-2022-JP")));
+        assertFalse(DirectLineOutput.isSupported(Charset.forName("GB18030")));
+    }
+
+    @Test
+    public void testLongLineAcrossBuffers() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            builder.append((char) ('a' + (i % 26)));
+            if (i % 7 == 0) {
+                builder.append("あ😀");
+            }
+        }
+        assertEncodedAsString(StandardCharsets.UTF_8, Newline.CRLF, builder.toString(), builder.toString());
+    }
+
+    @Test
+    public void testMinimumBuffers() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            builder.append((char) ('a' + (i % 26)));
+            if (i % 7 == 0) {
+                builder.append("あ😀");
+            }
+        }
+        for (final Charset charset : new Charset[] { StandardCharsets.UTF_8, Charset.forName("EUC-JP") }) {
+            final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+            try (final DirectLineOutput lineOutput = new DirectLineOutput(
+                    fileOutput, Newline.CRLF, charset, Exec.getBufferAllocator(), DirectLineOutput.MIN_BUFFER_SIZE, 1)) {
+                lineOutput.nextFile();
+                for (int i = 0; i < 3; i++) {
+                    lineOutput.addLine(new StringBuilder(builder));
+                    lineOutput.endPage();
+                }
+                lineOutput.finish();
+            }
+            final String line = builder.toString() + "\r\n";
+            assertArrayEquals((line + line + line).getBytes(charset), fileOutput.files.get(0).toByteArray());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBufferSizeTooSmall() {
+        new DirectLineOutput(new CsvFormatterTesting.CollectingFileOutput(), Newline.CRLF, StandardCharsets.UTF_8, Exec.getBufferAllocator(), 3, 1).close();
+    }
+
+    @Test
+    public void testNextFile() {
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        try (final DirectLineOutput lineOutput = new DirectLineOutput(fileOutput, Newline.LF, StandardCharsets.UTF_8, Exec.getBufferAllocator())) {
+            lineOutput.nextFile();
+            lineOutput.addLine(new StringBuilder("a"));
+            lineOutput.nextFile();
+            lineOutput.addLine(new StringBuilder("b"));
+            lineOutput.finish();
+        }
+        assertEquals(2, fileOutput.files.size());
+        assertArrayEquals("a\n".getBytes(StandardCharsets.UTF_8), fileOutput.files.get(0).toByteArray());
+        assertArrayEquals("b\n".getBytes(StandardCharsets.UTF_8), fileOutput.files.get(1).toByteArray());
+    }
+
+    @Test
+    public void testSegmentsMovedInOrder() {
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        final DirectLineOutput first = DirectLineOutput.forSegment(Newline.CRLF, StandardCharsets.UTF_8);
+        final DirectLineOutput second = DirectLineOutput.forSegment(Newline.CRLF, StandardCharsets.UTF_8);
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 30000; i++) {  // Larger than a buffer.
+            final String line = i + ",あ😀";
+            (i < 20000 ? first : second).addLine(new StringBuilder(line));
+            expected.append(line).append("\r\n");
+        }
+        try (final DirectLineOutput lineOutput = new DirectLineOutput(fileOutput, Newline.CRLF, StandardCharsets.UTF_8, Exec.getBufferAllocator())) {
+            lineOutput.nextFile();
+            first.moveTo(lineOutput);
+            second.moveTo(lineOutput);
+            first.moveTo(lineOutput);  // Nothing is left after moved.
+            lineOutput.finish();
+        }
+        assertArrayEquals(expected.toString().getBytes(StandardCharsets.UTF_8), fileOutput.files.get(0).toByteArray());
+    }
+
+    private static void assertEncodedAsString(final Charset charset, final Newline newline, final String... lines) {
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        final StringBuilder expected = new StringBuilder();
+        try (final DirectLineOutput lineOutput = new DirectLineOutput(fileOutput, newline, charset, Exec.getBufferAllocator())) {
+            lineOutput.nextFile();
+            for (final String line : lines) {
+                lineOutput.addLine(new StringBuilder(line));
+                expected.append(line).append(newline.getString());
+            }
+            lineOutput.finish();
+        }
+        assertEquals(1, fileOutput.files.size());
+        // String#getBytes replaces malformed and unmappable characters in the same way as LineEncoder.
+        assertArrayEquals(expected.toString().getBytes(charset), fileOutput.files.get(0).toByteArray());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import org.junit.Test;
+
+public class TestDoubleFormatter {
+    @Test
+    public void testFixed() {
+        assertEquals("1.01", fixed(2, 1.005));  // Rounded on the shortest digits "1.005", not on the binary value.
+        assertEquals("0.13", fixed(2, 0.125));
+        assertEquals("3", fixed(0, 2.5));
+        assertEquals("-3", fixed(0, -2.5));
+        assertEquals("10.00", fixed(2, 9.995));
+        assertEquals("0.00", fixed(2, -0.001));
+        assertEquals("0.00", fixed(2, -0.0));
+        assertEquals("0.000010", fixed(6, 1.0E-5));
+        assertEquals("12345678901234567000.0", fixed(1, 1.2345678901234567E19));
+        assertEquals("0.30000000000000004", fixed(17, 0.1 + 0.2));
+    }
+
+    @Test
+    public void testPlain() {
+        assertEquals("0.00001", plain(1.0E-5));
+        assertEquals("-0.000123", plain(-1.23E-4));
+        assertEquals("10000000000.0", plain(1.0E10));
+        assertEquals("12345678.9", plain(1.23456789E7));
+        assertEquals("1.5", plain(1.5));
+        assertEquals("-0.0", plain(-0.0));
+    }
+
+    @Test
+    public void testSameAsBigDecimal() {
+        final Random random = new Random(20260101L);
+        for (int i = 0; i < 200000; i++) {
+            final double value = random(random);
+            final int places = random.nextInt(DoubleFormatter.MAX_DECIMAL_PLACES + 1);
+            assertEquals(value + " in " + places, BigDecimal.valueOf(value).setScale(places, RoundingMode.HALF_UP).toPlainString(), fixed(places, value));
+
+            String expected = new BigDecimal(Double.toString(value)).stripTrailingZeros().toPlainString();
+            if (expected.indexOf('.') < 0) {
+                expected = expected + ".0";
+            }
+            if (value == 0.0 && 1 / value < 0) {
+                expected = "-" + expected;
+            }
+            assertEquals(expected, plain(value));
+        }
+    }
+
+    // Mixes short decimals, which often make ties, with random bits.
+    private static double random(final Random random) {
+        switch (random.nextInt(3)) {
+            case 0:
+                return (random.nextInt(2000001) - 1000000) / Math.pow(10, random.nextInt(8));
+            case 1:
+                return (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 20);
+            default:
+                final double value = Double.longBitsToDouble(random.nextLong());
+                return Double.isNaN(value) || Double.isInfinite(value) ? 0.0 : value;
+        }
+    }
+
+    private static String fixed(final int places, final double value) {
+        final StringBuilder line = new StringBuilder("x");
+        DoubleFormatter.fixed(places).appendTo(line, value);
+        return line.substring(1);
+    }
+
+    private static String plain(final double value) {
+        final StringBuilder line = new StringBuilder("x");
+        DoubleFormatter.plain().appendTo(line, value);
+        return line.substring(1);
+    }
+}
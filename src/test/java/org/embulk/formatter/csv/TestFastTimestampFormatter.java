@@ -0,0 +1,81 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.time.Instant;
+import java.util.Random;
+import org.embulk.util.timestamp.TimestampFormatter;
+import org.junit.Test;
+
+public class TestFastTimestampFormatter {
+    @Test
+    public void testUnsupported() {
+        assertNull(FastTimestampFormatter.compile("%Y-%m-%d %H:%M:%S.%6N %z", "Asia/Tokyo"));
+        assertNull(FastTimestampFormatter.compile("%b %d, %Y", "UTC"));
+        assertNull(FastTimestampFormatter.compile("%-m/%-d/%Y", "UTC"));
+        assertNull(FastTimestampFormatter.compile("%10N", "UTC"));
+        assertNull(FastTimestampFormatter.compile("%Y%", "UTC"));
+        assertNull(FastTimestampFormatter.compile("java:yyyy-MM-dd", "UTC"));
+        assertNotNull(FastTimestampFormatter.compile("%Y-%m-%d %H:%M:%S.%6N %z", "UTC"));
+        assertNotNull(FastTimestampFormatter.compile("%Y-%m-%dT%H:%M:%S%:z", "+09:00"));
+    }
+
+    @Test
+    public void testSameAsTimestampFormatter() {
+        final String[] patterns = {
+            "%Y-%m-%d %H:%M:%S.%6N %z",
+            "%Y-%m-%d %H:%M:%S",
+            "%Y-%m-%dT%H:%M:%SZ",
+            "%Y-%m-%dT%H:%M:%S.%LZ",
+            "%Y-%m-%dT%H:%M:%S.%3N%:z",
+            "%FT%T.%N%z",
+            "%Y%m%d%H%M%S %%",
+        };
+        final String[] zones = { "UTC", "+09:00", "-05:30" };
+        final Random random = new Random(20260101L);
+
+        for (final String pattern : patterns) {
+            for (final String zone : zones) {
+                final TimestampFormatter expectedFormatter = TimestampFormatter.builder(pattern, true).setDefaultZoneFromString(zone).build();
+                final FastTimestampFormatter formatter = FastTimestampFormatter.compile(pattern, zone);
+                assertNotNull(pattern, formatter);
+                for (int i = 0; i < 1000; i++) {
+                    // From 1000-01-02 to 9999-12-30 so that the year is in the supported range in any zone.
+                    final long epochSecond = -30610137600L + (long) (random.nextDouble() * (253402128000L + 30610137600L));
+                    final Instant instant = Instant.ofEpochSecond(epochSecond, random.nextInt(1000000000));
+                    final StringBuilder actual = new StringBuilder();
+                    formatter.appendTo(actual, instant);
+                    assertEquals(pattern + " in " + zone, expectedFormatter.format(instant), actual.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDeclineOutOfRange() {
+        final FastTimestampFormatter formatter = FastTimestampFormatter.compile("%Y-%m-%d", "UTC");
+        final StringBuilder out = new StringBuilder();
+        assertFalse(formatter.appendTo(out, Instant.parse("0999-12-31T23:59:59Z")));
+        assertFalse(formatter.appendTo(out, Instant.parse("+10000-01-01T00:00:00Z")));
+        assertEquals("", out.toString());
+    }
+}
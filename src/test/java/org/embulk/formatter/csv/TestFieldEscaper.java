@@ -0,0 +1,149 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.embulk.spi.Exec;
+import org.embulk.util.text.Newline;
+import org.junit.Test;
+
+public class TestFieldEscaper {
+    @Test
+    public void testSameAsCharacterByCharacterEscaping() {
+        final char[] delimiters = { ',', '\t', '|', '、' };
+        final char[] quotes = { '"', '\'', '~' };
+        final String alphabet = "abcXYZ09 ,\t|~'\"\r\n、あé";
+        final Random random = new Random(1);
+
+        for (final char delimiter : delimiters) {
+            for (final char quote : quotes) {
+                for (final CsvFormatterPlugin.QuotePolicy policy : CsvFormatterPlugin.QuotePolicy.values()) {
+                    final char escape = policy == CsvFormatterPlugin.QuotePolicy.NONE ? '\\' : quote;
+                    final FieldEscaper escaper = new FieldEscaper(delimiter, policy, quote, escape, "\n", "");
+                    for (int i = 0; i < 200; i++) {
+                        // Values of various lengths, with specials rare in some of them.
+                        final int length = random.nextInt(300);
+                        final int specialRate = random.nextBoolean() ? 4 : 400;
+                        final StringBuilder value = new StringBuilder();
+                        for (int j = 0; j < length; j++) {
+                            if (random.nextInt(specialRate) == 0) {
+                                value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                            } else {
+                                value.append(alphabet.charAt(random.nextInt(6)));
+                            }
+                        }
+                        final String expected = escapeCharacterByCharacter(value.toString(), delimiter, policy, quote, escape, "\n", "");
+                        assertEquals(expected, escaper.escape(value.toString()));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStreamToSameAsAppendTo() {
+        final String[] tokens = { "a", "b", ",", "\"", "\r", "\n", "\r\n", "\uD83D\uDE00" };  // A surrogate pair must not be split.
+        final Random random = new Random(2);
+        for (final CsvFormatterPlugin.QuotePolicy policy : CsvFormatterPlugin.QuotePolicy.values()) {
+            final char escape = policy == CsvFormatterPlugin.QuotePolicy.NONE ? '\\' : '"';
+            final FieldEscaper escaper = new FieldEscaper(',', policy, '"', escape, "\n", "");
+            for (int i = 0; i < 100; i++) {
+                final StringBuilder value = new StringBuilder();
+                final int length = random.nextInt(100);
+                for (int j = 0; j < length; j++) {
+                    value.append(tokens[random.nextInt(tokens.length)]);
+                }
+                final StringBuilder expected = new StringBuilder("head,");
+                escaper.appendTo(expected, value.toString());
+                expected.append(",tail\n");
+
+                final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+                try (final DirectLineOutput output = new DirectLineOutput(fileOutput, Newline.LF, StandardCharsets.UTF_8, Exec.getBufferAllocator())) {
+                    output.nextFile();
+                    final StringBuilder line = new StringBuilder("head,");
+                    escaper.streamTo(line, value.toString(), output, 1 + random.nextInt(8));
+                    line.append(",tail");
+                    if (value.length() > 0) {
+                        assertTrue(line.toString(), line.length() <= 6);  // Only the closing quote and the rest are left.
+                    }
+                    output.addLine(line);
+                    output.finish();
+                }
+                assertEquals(expected.toString(), new String(fileOutput.files.get(0).toByteArray(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void testShared() {
+        final FieldEscaper escaper = FieldEscaper.of(';', CsvFormatterPlugin.QuotePolicy.ALL, '\'', '\\', "\r\n", "NULL");
+        assertSame(escaper, FieldEscaper.of(';', CsvFormatterPlugin.QuotePolicy.ALL, '\'', '\\', "\r\n", "NULL"));
+        assertNotSame(escaper, FieldEscaper.of(';', CsvFormatterPlugin.QuotePolicy.ALL, '\'', '\\', "\r\n", ""));
+    }
+
+    // The former CsvFormatterPlugin#setEscapeAndQuoteValue.
+    private static String escapeCharacterByCharacter(
+            final String v, final char delimiter, final CsvFormatterPlugin.QuotePolicy policy, final char quote, final char escape, final String newline,
+            final String nullString) {
+        final StringBuilder escapedValue = new StringBuilder();
+        char previousChar = ' ';
+        boolean isRequireQuote = policy == CsvFormatterPlugin.QuotePolicy.ALL || policy == CsvFormatterPlugin.QuotePolicy.MINIMAL && v.equals(nullString);
+
+        for (int i = 0; i < v.length(); i++) {
+            final char c = v.charAt(i);
+            if (policy != CsvFormatterPlugin.QuotePolicy.NONE && c == quote) {
+                escapedValue.append(escape);
+                escapedValue.append(c);
+                isRequireQuote = true;
+            } else if (c == '\r') {
+                if (policy == CsvFormatterPlugin.QuotePolicy.NONE) {
+                    escapedValue.append(escape);
+                }
+                escapedValue.append(newline);
+                isRequireQuote = true;
+            } else if (c == '\n') {
+                if (previousChar != '\r') {
+                    if (policy == CsvFormatterPlugin.QuotePolicy.NONE) {
+                        escapedValue.append(escape);
+                    }
+                    escapedValue.append(newline);
+                    isRequireQuote = true;
+                }
+            } else if (c == delimiter) {
+                if (policy == CsvFormatterPlugin.QuotePolicy.NONE) {
+                    escapedValue.append(escape);
+                }
+                escapedValue.append(c);
+                isRequireQuote = true;
+            } else {
+                escapedValue.append(c);
+            }
+            previousChar = c;
+        }
+
+        if (policy != CsvFormatterPlugin.QuotePolicy.NONE && isRequireQuote) {
+            return quote + escapedValue.toString() + quote;
+        }
+        return escapedValue.toString();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.embulk.config.ConfigException;
+import org.embulk.config.ConfigSource;
+import org.embulk.spi.Exec;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.embulk.util.text.Newline;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestFileManifest {
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void testRowsBytesAndChecksumPerFile() throws IOException {
+        final Path directory = Files.createTempDirectory("embulk-formatter-csv");
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        final FileManifest manifest = new FileManifest(fileOutput, directory.resolve("manifest.").toString(), "task0", "crc32");
+        try (final LineOutput lineOutput = new RotatingLineOutput(
+                LineOutput.of(manifest, Newline.LF, StandardCharsets.UTF_8, Exec.getBufferAllocator()), 2, Long.MAX_VALUE,
+                new StringBuilder("h"), null, manifest)) {
+            lineOutput.nextFile();
+            for (int i = 0; i < 3; i++) {
+                lineOutput.addLine(new StringBuilder("\"r\n\u00e9" + i + "\""));
+            }
+            lineOutput.finish();
+        }
+
+        final Map<String, String> manifests = readAndDelete(directory);
+
+        // Named by the task id and the file number. The header line is in the bytes, but not in the rows.
+        assertEquals(2, manifests.size());
+        for (int i = 0; i < 2; i++) {
+            final byte[] bytes = fileOutput.files.get(i).toByteArray();
+            assertEquals(String.format("{\"task\":\"task0\",\"file\":%d,\"rows\":%d,\"bytes\":%d,\"algorithm\":\"crc32\",\"checksum\":\"%s\"}\n",
+                                       i, 2 - i, bytes.length, crc32(bytes)),
+                         manifests.get(String.format("manifest.task0.%03d.manifest.json", i)));
+        }
+        assertEquals(18, fileOutput.files.get(0).size());
+    }
+
+    @Test
+    public void testMatchedToRowIndexThroughPlugin() throws IOException {
+        final Path directory = Files.createTempDirectory("embulk-formatter-csv");
+        final ConfigSource config = CONFIG_MAPPER_FACTORY.newConfigSource()
+                .set("newline", "LF")
+                .set("max_rows_per_file", 2)
+                .set("row_index_path_prefix", directory.resolve("index.").toString())
+                .set("row_index_interval", 1)
+                .set("manifest_path_prefix", directory.resolve("manifest.").toString());
+        final Schema schema = Schema.builder().add("id", Types.LONG).add("s", Types.STRING).build();
+        final Object[][] rows = { { 0L, "a" }, { 1L, "b,c" }, { 2L, "d" } };
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = CsvFormatterTesting.run(config, schema, rows);
+
+        final Map<String, String> files = readAndDelete(directory);
+        assertEquals(2, fileOutput.files.size());
+        assertEquals(4, files.size());
+
+        // Each output file is found both in a manifest and in an index by its size and checksum, which have the same task id
+        // and file number in their names.
+        for (final ByteArrayOutputStream file : fileOutput.files) {
+            final byte[] bytes = file.toByteArray();
+            final String manifest = matchedName(files, ".manifest.json", "\"bytes\":" + bytes.length + ",\"algorithm\":\"crc32\",\"checksum\":\"" + crc32(bytes) + "\"");
+            final String index = matchedName(files, ".index.json", "\"bytes\":" + bytes.length + ",\"checksum\":\"" + crc32(bytes) + "\"");
+            assertEquals(manifest.substring("manifest.".length(), manifest.length() - ".manifest.json".length()),
+                         index.substring("index.".length(), index.length() - ".index.json".length()));
+            assertEquals(fieldsOf(files.get(manifest)), fieldsOf(files.get(index)));
+        }
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testSamePrefixAsRowIndex() {
+        final ConfigSource config = CONFIG_MAPPER_FACTORY.newConfigSource()
+                .set("row_index_path_prefix", "/tmp/embulk.")
+                .set("manifest_path_prefix", "/tmp/embulk.");
+        final Schema schema = Schema.builder().add("id", Types.LONG).build();
+        CsvFormatterTesting.run(config, schema, new Object[][] { { 0L } });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownChecksum() {
+        FileManifest.newChecksum("md5");
+    }
+
+    // Reads the files in the directory by their names, and deletes them with the directory.
+    private static Map<String, String> readAndDelete(final Path directory) throws IOException {
+        final Map<String, String> files = new TreeMap<>();
+        try (final Stream<Path> paths = Files.list(directory)) {
+            for (final Path path : paths.collect(Collectors.toList())) {
+                files.put(path.getFileName().toString(), new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+        return files;
+    }
+
+    // The name of the only file with the suffix which contains the fields.
+    private static String matchedName(final Map<String, String> files, final String suffix, final String fields) {
+        final List<String> matched = files.entrySet().stream()
+                .filter(entry -> entry.getKey().endsWith(suffix) && entry.getValue().contains(fields))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        assertEquals(1, matched.size());
+        return matched.get(0);
+    }
+
+    // The task id and the file number at the beginning of a manifest or an index.
+    private static String fieldsOf(final String json) {
+        return json.substring(0, json.indexOf(",\"file\":") + ",\"file\":".length() + 1);
+    }
+
+    private static String crc32(final byte[] bytes) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return String.format("%08x", crc.getValue());
+    }
+
+    private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY = ConfigMapperFactory.builder().addDefaultModules().build();
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.embulk.spi.Exec;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.util.text.Newline;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestFormatterMetrics {
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void testBytesPublishedPerPage() {
+        final Schema schema = Schema.builder().add("a", Types.STRING).build();
+        final FormatterMetrics metrics = new FormatterMetrics(schema.getColumns(), ',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', "");
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        try (final DirectLineOutput lineOutput = new DirectLineOutput(
+                metrics.countBytes(fileOutput), Newline.LF, StandardCharsets.UTF_8, Exec.getBufferAllocator())) {
+            lineOutput.nextFile();
+            lineOutput.addLine(new StringBuilder("abc"));
+            lineOutput.finish();
+        }
+        assertEquals(0L, metrics.getBytes());  // Not published until the page ends.
+        metrics.addPage();
+        assertEquals(4L, metrics.getBytes());
+        assertEquals(1L, metrics.getPages());
+    }
+
+    @Test
+    public void testBuffersFlushedAtPageEnd() {
+        final Schema schema = Schema.builder().add("a", Types.STRING).build();
+        final FormatterMetrics metrics = new FormatterMetrics(schema.getColumns(), ',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', "");
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        try (final DirectLineOutput lineOutput = new DirectLineOutput(
+                metrics.countBytes(fileOutput), Newline.LF, StandardCharsets.UTF_8, Exec.getBufferAllocator(), 64 * 1024, 4)) {
+            lineOutput.nextFile();
+            lineOutput.addLine(new StringBuilder("abc"));
+            lineOutput.endPage();  // Flushed with 4 bytes.
+            lineOutput.addLine(new StringBuilder("d"));
+            lineOutput.endPage();  // Kept with 2 bytes, and filled by the next page.
+            lineOutput.addLine(new StringBuilder("e"));
+            lineOutput.finish();
+        }
+        metrics.addPage();
+        assertEquals(8L, metrics.getBytes());
+        assertEquals(2L, metrics.getBuffers());
+        assertEquals(8.0 / (2 * 64 * 1024), metrics.getAverageBufferFill(), 1e-12);
+        assertEquals("abc\nd\ne\n", new String(fileOutput.files.get(0).toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFieldsCountedMinimal() {
+        final FormatterMetrics metrics = countFields(CsvFormatterPlugin.QuotePolicy.MINIMAL, "");
+        assertEquals(expected(10L, 14L), metrics.getFieldChars());  // abc, """", "", "a,b" and the null string.
+        assertEquals(expected(0L, 3L), metrics.getQuotedFields());
+        assertEquals(expected(0L, 2L), metrics.getEscapedFields());
+    }
+
+    @Test
+    public void testFieldsCountedAll() {
+        final FormatterMetrics metrics = countFields(CsvFormatterPlugin.QuotePolicy.ALL, "");
+        assertEquals(expected(4L, 4L), metrics.getQuotedFields());
+        assertEquals(expected(0L, 2L), metrics.getEscapedFields());
+    }
+
+    @Test
+    public void testFieldsCountedNone() {
+        final FormatterMetrics metrics = countFields(CsvFormatterPlugin.QuotePolicy.NONE, "");
+        assertEquals(expected(0L, 0L), metrics.getQuotedFields());
+        assertEquals(expected(0L, 1L), metrics.getEscapedFields());
+    }
+
+    @Test
+    public void testRegisteredWhileRunning() throws Exception {
+        final Schema schema = Schema.builder().add("a", Types.STRING).build();
+        final FormatterMetrics metrics = new FormatterMetrics(schema.getColumns(), ',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', "");
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName pattern = new ObjectName("org.embulk.formatter.csv:type=CsvFormatterMetrics,*");
+        final int before = server.queryNames(pattern, null).size();
+
+        metrics.register();
+        assertEquals(before + 1, server.queryNames(pattern, null).size());
+        metrics.unregister();
+        assertEquals(before, server.queryNames(pattern, null).size());
+    }
+
+    // Writes rows of a long and a string column with specials, an empty string, and nulls.
+    private static FormatterMetrics countFields(final CsvFormatterPlugin.QuotePolicy policy, final String nullString) {
+        final Schema schema = Schema.builder().add("l", Types.LONG).add("s", Types.STRING).build();
+        final Object[][] rows = { { 1L, "abc" }, { 22L, "\"" }, { 333L, "" }, { 4444L, "a,b" }, { null, null } };
+        final FormatterMetrics metrics = new FormatterMetrics(schema.getColumns(), ',', policy, '"', nullString);
+        final FieldEscaper escaper = new FieldEscaper(',', policy, '"', policy == CsvFormatterPlugin.QuotePolicy.NONE ? '\\' : '"', "\n", nullString);
+        final ColumnWriter[] columnWriters = ColumnWriter.compile(schema.getColumns(), ',', escaper, nullString, null, null, new StringValueCache[2]);
+        final StringBuilder line = new StringBuilder();
+        final PageReader reader = Exec.getPageReader(schema);
+        for (final Page page : CsvFormatterTesting.buildPages(schema, rows)) {
+            reader.setPage(page);
+            while (reader.nextRecord()) {
+                metrics.writeRecord(reader, columnWriters, line);
+            }
+        }
+        reader.close();
+        metrics.addPage();
+        return metrics;
+    }
+
+    private static Map<String, Long> expected(final long l, final long s) {
+        final Map<String, Long> map = new LinkedHashMap<>();
+        map.put("l", l);
+        map.put("s", s);
+        return map;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import static org.junit.Assert.assertEquals;
+
+import org.embulk.spi.json.JsonArray;
+import org.embulk.spi.json.JsonBoolean;
+import org.embulk.spi.json.JsonDouble;
+import org.embulk.spi.json.JsonLong;
+import org.embulk.spi.json.JsonNull;
+import org.embulk.spi.json.JsonObject;
+import org.embulk.spi.json.JsonString;
+import org.embulk.spi.json.JsonValue;
+import org.embulk.util.text.Newline;
+import org.junit.Test;
+
+public class TestJsonFieldWriter {
+    @Test
+    public void testSameAsToJson() {
+        final JsonValue[] values = {
+            JsonNull.NULL,
+            JsonBoolean.TRUE,
+            JsonLong.of(-123),
+            JsonDouble.of(1.0e-5),
+            JsonString.of(""),
+            JsonString.of("plain"),
+            JsonString.of("N/A"),
+            JsonString.of("with \"quote\", comma and \\ backslash"),
+            JsonString.of("line\r\nbreak\ttab\u0001"),  // Control characters
+            JsonString.of("あいう😀"),
+            JsonArray.of(),
+            JsonArray.of(JsonLong.of(1), JsonString.of("a,b"), JsonNull.NULL),
+            JsonObject.ofEntries(
+                    JsonObject.entry("key", JsonString.of("value")),
+                    JsonObject.entry("quoted\"key", JsonArray.of(JsonBoolean.FALSE, JsonDouble.of(3.5))),
+                    JsonObject.entry("nested", JsonObject.ofEntries(JsonObject.entry("k", JsonString.of("v\n"))))),
+        };
+
+        for (final CsvFormatterPlugin.QuotePolicy policy : CsvFormatterPlugin.QuotePolicy.values()) {
+            for (final char delimiter : new char[] { ',', '\t', ':', 'l' }) {
+                for (final String nullString : new String[] { "", "N/A", "null", "\"plain\"" }) {
+                    final FieldEscaper escaper = new FieldEscaper(
+                            delimiter, policy, '"', policy == CsvFormatterPlugin.QuotePolicy.NONE ? '\\' : '"', Newline.LF.getString(), nullString);
+                    final JsonFieldWriter writer = new JsonFieldWriter(escaper);
+                    for (final JsonValue value : values) {
+                        final StringBuilder line = new StringBuilder("x");
+                        writer.appendTo(line, value);
+                        assertEquals(value.toJson() + " in " + policy + " with " + delimiter,
+                                     "x" + escaper.escape(value.toJson()), line.toString());
+                    }
+                }
+            }
+        }
+    }
+}
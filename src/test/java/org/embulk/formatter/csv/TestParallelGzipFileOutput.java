@@ -0,0 +1,136 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import org.embulk.config.ConfigException;
+import org.embulk.config.ConfigSource;
+import org.embulk.spi.Buffer;
+import org.embulk.spi.Exec;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.embulk.util.text.Newline;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestParallelGzipFileOutput {
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void testMultiMemberGzip() throws IOException {
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        final StringBuilder expected = new StringBuilder();
+        try (final DirectLineOutput lineOutput = new DirectLineOutput(
+                new ParallelGzipFileOutput(fileOutput, Exec.getBufferAllocator(), 1000, 2, 3), Newline.LF, StandardCharsets.UTF_8, Exec.getBufferAllocator())) {
+            lineOutput.nextFile();
+            for (int i = 0; i < 10000; i++) {
+                final StringBuilder line = new StringBuilder().append(i).append(",value ").append(i % 7).append(",é");
+                lineOutput.addLine(line);
+                expected.append(line).append('\n');
+            }
+            lineOutput.nextFile();
+            lineOutput.addLine(new StringBuilder("a"));
+            lineOutput.finish();
+        }
+
+        assertEquals(2, fileOutput.files.size());
+        assertArrayEquals(expected.toString().getBytes(StandardCharsets.UTF_8), gunzip(fileOutput.files.get(0).toByteArray()));
+        assertArrayEquals("a\n".getBytes(StandardCharsets.UTF_8), gunzip(fileOutput.files.get(1).toByteArray()));
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        try (final ParallelGzipFileOutput output = new ParallelGzipFileOutput(fileOutput, Exec.getBufferAllocator(), 1000, 1, 1)) {
+            output.nextFile();
+            output.finish();
+        }
+        assertEquals(0, gunzip(fileOutput.files.get(0).toByteArray()).length);
+    }
+
+    @Test
+    public void testIncompressibleBlocks() throws IOException {
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        final byte[] bytes = new byte[100000];
+        new Random(20260101L).nextBytes(bytes);
+        try (final ParallelGzipFileOutput output = new ParallelGzipFileOutput(fileOutput, Exec.getBufferAllocator(), 4096, 3, 1)) {
+            output.nextFile();
+            for (int offset = 0; offset < bytes.length; offset += 7000) {
+                final int length = Math.min(bytes.length - offset, 7000);
+                final Buffer buffer = Exec.getBufferAllocator().allocate(length);
+                buffer.setBytes(0, bytes, offset, length);
+                buffer.limit(length);
+                output.add(buffer);
+            }
+            output.finish();
+        }
+        // Members of random bytes are larger than their blocks, but within the array of the thread.
+        assertArrayEquals(bytes, gunzip(fileOutput.files.get(0).toByteArray()));
+    }
+
+    @Test
+    public void testThroughPlugin() throws IOException {
+        final ConfigSource config = CONFIG_MAPPER_FACTORY.newConfigSource()
+                .set("newline", "LF")
+                .set("compression", "gzip_parallel")
+                .set("gzip_block_size", 1000)
+                .set("gzip_threads", 2)
+                .set("gzip_blocks_in_flight", 2);
+        final Schema schema = Schema.builder().add("id", Types.LONG).add("s", Types.STRING).build();
+        final Object[][] rows = new Object[3000][];
+        final StringBuilder expected = new StringBuilder("id,s\n");
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[] { (long) i, "value " + (i % 7) };
+            expected.append(i).append(",value ").append(i % 7).append('\n');
+        }
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = CsvFormatterTesting.run(config, schema, rows);
+        assertEquals(1, fileOutput.files.size());
+        assertArrayEquals(expected.toString().getBytes(StandardCharsets.UTF_8), gunzip(fileOutput.files.get(0).toByteArray()));
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testNoGzipThreads() {
+        final ConfigSource config = CONFIG_MAPPER_FACTORY.newConfigSource().set("compression", "gzip_parallel").set("gzip_threads", 0);
+        CsvFormatterTesting.run(config, Schema.builder().add("id", Types.LONG).build(), new Object[][] { { 0L } });
+    }
+
+    private static byte[] gunzip(final byte[] compressed) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            final byte[] bytes = new byte[4096];
+            int length;
+            while ((length = in.read(bytes)) > 0) {
+                out.write(bytes, 0, length);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY = ConfigMapperFactory.builder().addDefaultModules().build();
+}
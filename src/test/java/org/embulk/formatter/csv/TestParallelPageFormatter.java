@@ -0,0 +1,115 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableMap;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Random;
+import org.embulk.config.ConfigSource;
+import org.embulk.spi.Exec;
+import org.embulk.spi.Page;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.embulk.util.text.Newline;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestParallelPageFormatter {
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void testSameAsSerial() {
+        final Schema schema = Schema.builder()
+                .add("id", Types.LONG)
+                .add("s", Types.STRING)
+                .add("t", Types.TIMESTAMP)
+                .add("t_tokyo", Types.TIMESTAMP)
+                .add("d", Types.DOUBLE)
+                .add("b", Types.BOOLEAN)
+                .build();
+        final Object[][] rows = rows(schema, 5000);
+
+        final String serial = CsvFormatterTesting.format(config(1), schema, rows);
+        assertEquals(serial, CsvFormatterTesting.format(config(2), schema, rows));
+        assertEquals(serial, CsvFormatterTesting.format(config(4), schema, rows));
+    }
+
+    @Test
+    public void testMetricsAddedUpFromChunks() {
+        final Schema schema = Schema.builder().add("id", Types.LONG).add("s", Types.STRING).build();
+        final Object[][] rows = new Object[3000][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[] { (long) i, "abc" + i };
+        }
+        final FieldEscaper escaper = new FieldEscaper(',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', '"', "\n", "");
+        final FormatterMetrics metrics = new FormatterMetrics(schema.getColumns(), ',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', "");
+        final ParallelPageFormatter formatter = new ParallelPageFormatter(
+                4,
+                () -> Exec.getPageReader(schema),
+                () -> ColumnWriter.compile(schema.getColumns(), ',', escaper, "", null, null, new StringValueCache[2]),
+                Newline.LF,
+                StandardCharsets.UTF_8,
+                metrics);
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        try (final DirectLineOutput output = new DirectLineOutput(fileOutput, Newline.LF, StandardCharsets.UTF_8, Exec.getBufferAllocator())) {
+            output.nextFile();
+            for (final Page page : CsvFormatterTesting.buildPages(schema, rows)) {
+                formatter.add(page, output);
+            }
+            output.finish();
+        }
+        metrics.addPage();
+
+        assertEquals(rows.length, metrics.getRows());
+        // Each line has the fields, a delimiter and a newline.
+        final long fieldChars = metrics.getFieldChars().get("id") + metrics.getFieldChars().get("s");
+        assertEquals(fileOutput.files.get(0).size(), fieldChars + 2L * rows.length);
+    }
+
+    private static ConfigSource config(final int parallelism) {
+        return CONFIG_MAPPER_FACTORY.newConfigSource()
+                .set("formatting_parallelism", parallelism)
+                .set("column_options", ImmutableMap.of("t_tokyo", ImmutableMap.of("timezone", "Asia/Tokyo")));
+    }
+
+    // Pages of this schema have some hundreds of records, which are split into 2 or more chunks.
+    private static Object[][] rows(final Schema schema, final int count) {
+        final Random random = new Random(20260101L);
+        final Object[][] rows = new Object[count][];
+        for (int i = 0; i < count; i++) {
+            final Instant instant = Instant.ofEpochSecond(1700000000L + i / 10, random.nextInt(1000000000));
+            rows[i] = new Object[] {
+                (long) i,
+                random.nextInt(4) == 0 ? "a,\"b\"\r\nc " + i : "abc" + i,
+                instant,
+                instant,
+                random.nextDouble() * 1000,
+                random.nextBoolean(),
+            };
+            rows[i][1 + random.nextInt(schema.getColumnCount() - 1)] = null;
+        }
+        return rows;
+    }
+
+    private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY = ConfigMapperFactory.builder().addDefaultModules().build();
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.embulk.config.ConfigSource;
+import org.embulk.spi.Exec;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.embulk.util.text.Newline;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestPartitionedLineOutput {
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void testPartitionsInMemory() {
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = writePartitions(64, Long.MAX_VALUE);
+        assertFiles(fileOutput);
+    }
+
+    @Test
+    public void testPartitionsSpilled() {
+        // A partition at most in memory, and a buffer of a few records at most.
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = writePartitions(1, 20);
+        assertFiles(fileOutput);
+    }
+
+    @Test
+    public void testPartitionsInManifests() throws IOException {
+        final Path directory = Files.createTempDirectory("embulk-formatter-csv");
+        final ConfigSource config = CONFIG_MAPPER_FACTORY.newConfigSource()
+                .set("newline", "LF")
+                .set("partition_by", "key")
+                .set("manifest_path_prefix", directory.resolve("manifest.").toString());
+        final Schema schema = Schema.builder().add("key", Types.STRING).add("value", Types.LONG).build();
+        final Object[][] rows = { { "b", 0L }, { "a,\"x\"", 1L }, { "b", 2L } };
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = CsvFormatterTesting.run(config, schema, rows);
+
+        final List<String> manifests = new ArrayList<>();
+        try (final Stream<Path> paths = Files.list(directory)) {
+            for (final Path path : paths.sorted().collect(Collectors.toList())) {
+                manifests.add(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+
+        // The partition of each file is the field as written in the CSV.
+        assertEquals(2, fileOutput.files.size());
+        assertEquals("key,value\nb,0\nb,2\n", new String(fileOutput.files.get(0).toByteArray(), StandardCharsets.UTF_8));
+        assertEquals("key,value\n\"a,\"\"x\"\"\",1\n", new String(fileOutput.files.get(1).toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(2, manifests.size());
+        assertTrue(manifests.get(0), manifests.get(0).contains(",\"file\":0,\"partition\":\"b\",\"rows\":2,\"bytes\":18,"));
+        assertTrue(manifests.get(1), manifests.get(1).contains(",\"file\":1,\"partition\":\"\\\"a,\\\"\\\"x\\\"\\\"\\\"\",\"rows\":1,\"bytes\":22,"));
+    }
+
+    @Test
+    public void testNoRecords() {
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        try (final PartitionedLineOutput output = newPartitionedLineOutput(fileOutput, 64, Long.MAX_VALUE)) {
+            output.finish();
+        }
+        assertEquals(1, fileOutput.files.size());
+        assertEquals("key,value\n", new String(fileOutput.files.get(0).toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static CsvFormatterTesting.CollectingFileOutput writePartitions(final int maxPartitionsInMemory, final long maxBufferedBytes) {
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        try (final PartitionedLineOutput output = newPartitionedLineOutput(fileOutput, maxPartitionsInMemory, maxBufferedBytes)) {
+            final String[] keys = { "b", "a", "a", "c", "b", "a", "c", "c", "b", "a" };
+            for (int i = 0; i < keys.length; i++) {
+                output.addLine(new StringBuilder(keys[i] + ",v" + i), 0, keys[i].length());
+            }
+            output.finish();
+        }
+        return fileOutput;
+    }
+
+    private static PartitionedLineOutput newPartitionedLineOutput(
+            final CsvFormatterTesting.CollectingFileOutput fileOutput, final int maxPartitionsInMemory, final long maxBufferedBytes) {
+        return new PartitionedLineOutput(
+                new DirectLineOutput(fileOutput, Newline.LF, StandardCharsets.UTF_8, Exec.getBufferAllocator()),
+                Newline.LF,
+                StandardCharsets.UTF_8,
+                new StringBuilder("key,value"),
+                maxPartitionsInMemory,
+                maxBufferedBytes,
+                null);
+    }
+
+    // Files in the order of the first records of partitions, with records in their original order.
+    private static void assertFiles(final CsvFormatterTesting.CollectingFileOutput fileOutput) {
+        assertEquals(3, fileOutput.files.size());
+        assertEquals("key,value\nb,v0\nb,v4\nb,v8\n", new String(fileOutput.files.get(0).toByteArray(), StandardCharsets.UTF_8));
+        assertEquals("key,value\na,v1\na,v2\na,v5\na,v9\n", new String(fileOutput.files.get(1).toByteArray(), StandardCharsets.UTF_8));
+        assertEquals("key,value\nc,v3\nc,v6\nc,v7\n", new String(fileOutput.files.get(2).toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY = ConfigMapperFactory.builder().addDefaultModules().build();
+}
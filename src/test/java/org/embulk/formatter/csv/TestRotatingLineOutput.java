@@ -0,0 +1,140 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.embulk.spi.Exec;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.util.text.Newline;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestRotatingLineOutput {
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void testMaxRowsWithHeader() {
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        try (final LineOutput lineOutput = new RotatingLineOutput(
+                LineOutput.of(fileOutput, Newline.LF, StandardCharsets.UTF_8, Exec.getBufferAllocator()), 2, Long.MAX_VALUE, new StringBuilder("h"), null, null)) {
+            lineOutput.nextFile();
+            for (int i = 0; i < 5; i++) {
+                lineOutput.addLine(new StringBuilder("r" + i));
+            }
+            lineOutput.finish();
+        }
+        assertEquals(3, fileOutput.files.size());
+        assertEquals("h\nr0\nr1\n", new String(fileOutput.files.get(0).toByteArray(), StandardCharsets.UTF_8));
+        assertEquals("h\nr2\nr3\n", new String(fileOutput.files.get(1).toByteArray(), StandardCharsets.UTF_8));
+        assertEquals("h\nr4\n", new String(fileOutput.files.get(2).toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMaxBytesAtRecordBoundaries() {
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        try (final LineOutput lineOutput = new RotatingLineOutput(
+                LineOutput.of(fileOutput, Newline.LF, StandardCharsets.UTF_8, Exec.getBufferAllocator()), Long.MAX_VALUE, 5, null, null, null)) {
+            lineOutput.nextFile();
+            lineOutput.addLine(new StringBuilder("aaaaaaaa"));  // Larger than the limit by itself.
+            lineOutput.addLine(new StringBuilder("\u00e9"));
+            lineOutput.addLine(new StringBuilder("\u00e9"));  // Counted in bytes, 6 bytes with this record.
+            lineOutput.addLine(new StringBuilder("c"));
+            lineOutput.finish();
+        }
+        assertEquals(3, fileOutput.files.size());
+        assertEquals("aaaaaaaa\n", new String(fileOutput.files.get(0).toByteArray(), StandardCharsets.UTF_8));
+        assertEquals("\u00e9\n\u00e9\n", new String(fileOutput.files.get(1).toByteArray(), StandardCharsets.UTF_8));
+        assertEquals("c\n", new String(fileOutput.files.get(2).toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRecordInParts() {
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        try (final LineOutput lineOutput = new RotatingLineOutput(
+                LineOutput.of(fileOutput, Newline.LF, StandardCharsets.UTF_8, Exec.getBufferAllocator()), 1, Long.MAX_VALUE, null, null, null)) {
+            lineOutput.nextFile();
+            lineOutput.addLine(new StringBuilder("r0"));
+            lineOutput.addPart(new StringBuilder("r"));  // Rotated before the first part, not between the parts.
+            lineOutput.addPart(new StringBuilder("1"));
+            lineOutput.addLine(new StringBuilder(",x"));
+            lineOutput.finish();
+        }
+        assertEquals(2, fileOutput.files.size());
+        assertEquals("r0\n", new String(fileOutput.files.get(0).toByteArray(), StandardCharsets.UTF_8));
+        assertEquals("r1,x\n", new String(fileOutput.files.get(1).toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRowIndex() throws IOException {
+        final Path directory = Files.createTempDirectory("embulk-formatter-csv");
+        final CsvFormatterTesting.CollectingFileOutput fileOutput = new CsvFormatterTesting.CollectingFileOutput();
+        final RowIndex rowIndex = new RowIndex(fileOutput, directory.resolve("index.").toString(), "task0", 2);
+        try (final LineOutput lineOutput = new RotatingLineOutput(
+                LineOutput.of(rowIndex, Newline.CRLF, StandardCharsets.UTF_8, Exec.getBufferAllocator()), 5, Long.MAX_VALUE,
+                new StringBuilder("h"), rowIndex, null)) {
+            lineOutput.nextFile();
+            for (int i = 0; i < 7; i++) {
+                lineOutput.addLine(new StringBuilder("\"r\n\u00e9" + i + "\""));
+            }
+            lineOutput.finish();
+        }
+
+        final List<String> names = new ArrayList<>();
+        final List<String> indexes = new ArrayList<>();
+        try (final Stream<Path> paths = Files.list(directory)) {
+            paths.sorted().forEach(path -> {
+                try {
+                    names.add(path.getFileName().toString());
+                    indexes.add(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+                    Files.delete(path);
+                } catch (final IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+        }
+        Files.delete(directory);
+
+        // Named by the task id and the file number, which are also in the index.
+        assertEquals(Arrays.asList("index.task0.000.index.json", "index.task0.001.index.json"), names);
+
+        // Every record is 9 bytes with CRLF, after the header of 3 bytes. The size and the checksum are of the file as written.
+        assertEquals(2, indexes.size());
+        assertEquals(48, fileOutput.files.get(0).size());
+        assertEquals(21, fileOutput.files.get(1).size());
+        assertEquals("{\"task\":\"task0\",\"file\":0,\"interval\":2,\"rows\":5,\"bytes\":48,\"checksum\":\"" + crc32(fileOutput.files.get(0).toByteArray())
+                     + "\",\"offsets\":[3,21,39]}\n", indexes.get(0));
+        assertEquals("{\"task\":\"task0\",\"file\":1,\"interval\":2,\"rows\":2,\"bytes\":21,\"checksum\":\"" + crc32(fileOutput.files.get(1).toByteArray())
+                     + "\",\"offsets\":[3]}\n", indexes.get(1));
+    }
+
+    private static String crc32(final byte[] bytes) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return String.format("%08x", crc.getValue());
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.embulk.util.text.Newline;
+import org.junit.Test;
+
+public class TestStringValueCache {
+    @Test
+    public void testSameAsFieldEscaper() {
+        final FieldEscaper escaper = new FieldEscaper(',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', '"', Newline.LF.getString(), "");
+        final StringValueCache cache = new StringValueCache(escaper);
+        final String[] values = { "foo", "a,b", "say \"hi\"", "", "line\nbreak", "foo", "a,b", "say \"hi\"", "", "line\nbreak" };
+
+        final StringBuilder expected = new StringBuilder();
+        final StringBuilder line = new StringBuilder();
+        for (final String value : values) {
+            escaper.appendTo(expected, value);
+            cache.appendTo(line, value);
+        }
+        assertEquals(expected.toString(), line.toString());
+        assertEquals(5, cache.getHits());
+        assertEquals(5, cache.getMisses());
+        assertTrue(cache.isEnabled());
+    }
+
+    @Test
+    public void testDisabledForLowHitRate() {
+        final FieldEscaper escaper = new FieldEscaper(',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', '"', Newline.LF.getString(), "");
+        final StringValueCache cache = new StringValueCache(escaper);
+        final StringBuilder line = new StringBuilder();
+        for (int i = 0; i < StringValueCache.CHECK_INTERVAL; i++) {
+            cache.appendTo(line, "value" + i);
+        }
+        assertFalse(cache.isEnabled());
+
+        line.setLength(0);
+        cache.appendTo(line, "a,b");
+        assertEquals("\"a,b\"", line.toString());
+        assertEquals(StringValueCache.CHECK_INTERVAL, cache.getHits() + cache.getMisses());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.formatter.csv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.Instant;
+import org.embulk.util.text.Newline;
+import org.embulk.util.timestamp.TimestampFormatter;
+import org.junit.Test;
+
+public class TestTimestampColumnFormatter {
+    @Test
+    public void testFindFraction() {
+        assertArrayEquals(new int[] { 18, 21, 6 }, TimestampColumnFormatter.findFraction("%Y-%m-%d %H:%M:%S.%6N %z"));
+        assertArrayEquals(new int[] { 18, 20, 9 }, TimestampColumnFormatter.findFraction("%Y-%m-%d %H:%M:%S.%N"));
+        assertArrayEquals(new int[] { 18, 20, 3 }, TimestampColumnFormatter.findFraction("%Y-%m-%dT%H:%M:%S.%LZ"));
+        assertArrayEquals(new int[0], TimestampColumnFormatter.findFraction("%Y-%m-%d %H:%M:%S %%N"));
+        assertNull(TimestampColumnFormatter.findFraction("%Y-%m-%d %H:%M:%S.%3N.%3N"));
+        assertNull(TimestampColumnFormatter.findFraction("%Q"));
+        assertNull(TimestampColumnFormatter.findFraction("%-6N"));
+        assertNull(TimestampColumnFormatter.findFraction("%12N"));
+        assertNull(TimestampColumnFormatter.findFraction("%Y%"));
+        assertNull(TimestampColumnFormatter.findFraction("java:yyyy-MM-dd"));
+    }
+
+    @Test
+    public void testSameAsTimestampFormatter() {
+        final String[] patterns = {
+            "%Y-%m-%d %H:%M:%S.%6N %z",
+            "%Y-%m-%dT%H:%M:%S.%LZ",
+            "%Y-%m-%d %H:%M:%S",
+            "%N",
+            "%s.%3N",
+            "%b %e, %Y %l:%M %p.%9N %Z",
+        };
+        final String[] zones = { "UTC", "Asia/Tokyo", "America/Los_Angeles", "Asia/Kolkata" };
+        final Instant[] instants = {
+            Instant.ofEpochSecond(0, 0),
+            Instant.ofEpochSecond(1422386629, 123456789),
+            Instant.ofEpochSecond(1422386629, 987654321),
+            Instant.ofEpochSecond(1422386630, 1000),
+            Instant.ofEpochSecond(-1, 500000000),
+            Instant.ofEpochSecond(1422386629, 123456789),
+        };
+        final FieldEscaper escaper = new FieldEscaper(',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', '"', Newline.LF.getString(), "");
+
+        for (final String pattern : patterns) {
+            for (final String zone : zones) {
+                final TimestampFormatter expectedFormatter = TimestampFormatter.builder(pattern, true).setDefaultZoneFromString(zone).build();
+                final TimestampColumnFormatter formatter = TimestampColumnFormatter.of(pattern, zone, escaper);
+                for (final Instant instant : instants) {
+                    final StringBuilder line = new StringBuilder();
+                    formatter.appendTo(line, instant);
+                    assertEquals(pattern + " in " + zone, escaper.escape(expectedFormatter.format(instant)), line.toString());
+                }
+                // Timestamps declined by the fast formatter fall back to the cache.
+                assertEquals(instants.length, formatter.getHits() + formatter.getMisses() + formatter.getFastFormats());
+            }
+        }
+    }
+
+    @Test
+    public void testCacheHits() {
+        final FieldEscaper escaper = new FieldEscaper(',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', '"', Newline.LF.getString(), "");
+        final TimestampColumnFormatter formatter = TimestampColumnFormatter.of("%Y-%m-%d %H:%M:%S.%6N %z", "Asia/Tokyo", escaper);
+        final StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            formatter.appendTo(line, Instant.ofEpochSecond(1422386629, i * 1000));
+        }
+        assertEquals(9, formatter.getHits());
+        assertEquals(1, formatter.getMisses());
+    }
+
+    @Test
+    public void testFastFormatsNotCounted() {
+        final FieldEscaper escaper = new FieldEscaper(',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', '"', Newline.LF.getString(), "");
+        final TimestampColumnFormatter formatter = TimestampColumnFormatter.of("%Y-%m-%d %H:%M:%S.%6N %z", "UTC", escaper);
+        final StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            formatter.appendTo(line, Instant.ofEpochSecond(1422386629, i * 1000));
+        }
+        assertEquals(10, formatter.getFastFormats());
+        assertEquals(0, formatter.getHits());
+        assertEquals(0, formatter.getMisses());
+    }
+
+    @Test
+    public void testCacheNotSharedAcrossFormatters() {
+        final FieldEscaper escaper = FieldEscaper.of(',', CsvFormatterPlugin.QuotePolicy.MINIMAL, '"', '"', Newline.LF.getString(), "");
+        final TimestampColumnFormatter first = TimestampColumnFormatter.of("%Y-%m-%d %H:%M:%S.%6N %z", "Asia/Tokyo", escaper);
+        final TimestampColumnFormatter second = TimestampColumnFormatter.of("%Y-%m-%d %H:%M:%S.%6N %z", "Asia/Tokyo", escaper);
+        final StringBuilder firstLine = new StringBuilder();
+        final StringBuilder secondLine = new StringBuilder();
+        first.appendTo(firstLine, Instant.ofEpochSecond(1422386629, 1000));
+        second.appendTo(secondLine, Instant.ofEpochSecond(1422386629, 1000));
+        assertEquals(firstLine.toString(), secondLine.toString());
+        assertEquals(1, first.getMisses());
+        assertEquals(1, second.getMisses());
+    }
+}